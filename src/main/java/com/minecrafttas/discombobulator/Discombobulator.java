@@ -1,9 +1,8 @@
 package com.minecrafttas.discombobulator;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
@@ -12,9 +11,11 @@ import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.ModuleVersionIdentifier;
 
 import com.minecrafttas.discombobulator.extensions.PreprocessingConfiguration;
+import com.minecrafttas.discombobulator.processor.VersionCatalog;
 import com.minecrafttas.discombobulator.tasks.TaskBuildCi;
 import com.minecrafttas.discombobulator.tasks.TaskPreprocessBase;
 import com.minecrafttas.discombobulator.tasks.TaskPreprocessWatch;
+import com.minecrafttas.discombobulator.utils.FileClassifier;
 import com.minecrafttas.discombobulator.utils.Pair;
 
 /**
@@ -27,9 +28,13 @@ public class Discombobulator implements Plugin<Project> {
 
 	public static PreprocessingConfiguration config;
 
+	public static VersionCatalog versions;
+
 	public static Processor processor;
+
+	public static FileClassifier classifier;
 	
-	public static PathLock pathLock;
+	public static EchoFilter echoFilter;
 	
 	private static String discoVersion;
 	
@@ -40,8 +45,8 @@ public class Discombobulator implements Plugin<Project> {
 	public void apply(Project project) {
 		// Make buildscript extension for preprocessor
 		config = project.getExtensions().create("discombobulator", PreprocessingConfiguration.class);
-		// Create schedule
-		pathLock = new PathLock();
+		// Remember the written outputs in watch mode
+		echoFilter = new EchoFilter();
 		
 		// Register tasks
 		TaskPreprocessBase baseTask = project.getTasks().register("preprocessBase", TaskPreprocessBase.class).get();
@@ -64,7 +69,9 @@ public class Discombobulator implements Plugin<Project> {
 		project.afterEvaluate(_project -> {
 			boolean inverted = config.getInverted().getOrElse(false);
 			PORT_LOCK = config.getPort().getOrElse(8762);
-			processor = new Processor(getVersion(), config.getPatterns().get(), inverted);
+			versions = VersionCatalog.parse(config.getVersions().get());
+			processor = new Processor(versions, config.getPatterns().get(), inverted, config.getCommentSyntax().getOrElse(new HashMap<>()));
+			classifier = new FileClassifier(config.getPassthrough().getOrElse(new ArrayList<>()));
 			
 			// Yes this is yoinked from the gradle forums to get the disco version. Is there a better method? Probably. Do I care? Currently, no.
 			final Configuration classpath = _project.getBuildscript().getConfigurations().getByName("classpath");
@@ -97,31 +104,15 @@ public class Discombobulator implements Plugin<Project> {
 
 	}
 	
-	public static List<Pair<String, String>> getVersionPairs(){
-		List<Pair<String, String>> out = new ArrayList<>();
-		List<String> verPre = config.getVersions().get();
-		Pattern regex = Pattern.compile("([\\w\\.]+)(:\\s*(.+))?");
-		for (String ver : verPre) {
-			Matcher matcher = regex.matcher(ver);
-			if(matcher.find()) {
-				out.add(Pair.of(matcher.group(1), matcher.group(3)));
-			}
-		}
-		return out;
+	/**
+	 * @return The version of the plugin, null before the project was evaluated
+	 */
+	public static String getDiscoVersion() {
+		return discoVersion;
 	}
 	
-	public static List<String> getVersion() {
-		List<String> versions =  new ArrayList<>();
-		Pattern regex = Pattern.compile("([\\w\\.]+)(:\\s*(.+))?");
-		// Initialize Processor
-		List<String> mapsnpaths = config.getVersions().get();
-		for(String ver : mapsnpaths) {
-			Matcher matcher = regex.matcher(ver);
-			if(matcher.find()) {
-				versions.add(matcher.group(1));
-			}
-		}
-		return versions;
+	public static List<Pair<String, String>> getVersionPairs(){
+		return versions.getVersionPairs();
 	}
 
 	private static String getCenterText(String text) {
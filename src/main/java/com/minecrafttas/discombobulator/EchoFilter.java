@@ -0,0 +1,85 @@
+package com.minecrafttas.discombobulator;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.minecrafttas.discombobulator.utils.FileManifest;
+
+/**
+ * <p>Recognizes the file events caused by writing preprocessed files in watch mode, so they are not preprocessed back into the other versions.
+ *
+ * <p>When an output is written, the hash of its content is remembered. An event of a file that still has exactly that content is the echo of the write and is ignored.
+ * A file with any other content was changed by someone else, even if that happened right after the output was written, and is preprocessed.
+ *
+ * <p>The hashes are stored in a fixed number of slots, selected by the path. An entry is removed once its file has a different content, or replaced by the entry of another path in the same slot.
+ * A replaced entry only means that its echo is preprocessed once more, which writes nothing, since the outputs already have the content.
+ */
+public class EchoFilter {
+
+	/**
+	 * The default number of slots
+	 */
+	private static final int DEFAULT_SLOTS = 4096;
+
+	/**
+	 * The expected content by slot
+	 */
+	private final AtomicReferenceArray<Expected> slots;
+
+	/**
+	 * Creates an echo filter with the default number of slots
+	 */
+	public EchoFilter() {
+		this(DEFAULT_SLOTS);
+	}
+
+	/**
+	 * @param slots The maximum number of files that are remembered at once
+	 */
+	public EchoFilter(int slots) {
+		this.slots = new AtomicReferenceArray<>(slots);
+	}
+
+	/**
+	 * Remembers the content of an output, before it is written
+	 * @param path The output file
+	 * @param hash The hash of the content, see {@link FileManifest#hash(byte[])}
+	 */
+	public void expect(Path path, String hash) {
+		slots.set(index(path), new Expected(path, hash));
+	}
+
+	/**
+	 * Checks if an event of a file was caused by writing it
+	 * @param path The file of the event
+	 * @param content The current content of the file
+	 * @return If the file has the content it was written with
+	 */
+	public boolean isEcho(Path path, byte[] content) {
+		int index = index(path);
+		Expected expected = slots.get(index);
+		if (expected == null || !expected.path.equals(path))
+			return false;
+		if (expected.hash.equals(FileManifest.hash(content)))
+			return true;
+		slots.compareAndSet(index, expected, null);	// The file was changed since it was written
+		return false;
+	}
+
+	private int index(Path path) {
+		return Math.floorMod(path.hashCode(), slots.length());
+	}
+
+	/**
+	 * The content an output was written with
+	 */
+	private static class Expected {
+		private final Path path;
+		private final String hash;
+
+		private Expected(Path path, String hash) {
+			this.path = path;
+			this.hash = hash;
+		}
+	}
+}
@@ -1,34 +1,80 @@
 package com.minecrafttas.discombobulator;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
 
+import com.minecrafttas.discombobulator.processor.CommentRegistry;
+import com.minecrafttas.discombobulator.processor.CompiledFile;
+import com.minecrafttas.discombobulator.processor.LineLexer;
+import com.minecrafttas.discombobulator.processor.PatternMatcher;
+import com.minecrafttas.discombobulator.processor.PatternTable;
+import com.minecrafttas.discombobulator.processor.VersionCatalog;
+import com.minecrafttas.discombobulator.utils.LRUCache;
 import com.minecrafttas.discombobulator.utils.Pair;
 
 /*Welcome to the madness that is this preprocessor. Here I will try as best as I can to explain how this works.
  * Why am I explaining it? Because my hope is, that at least I can remember what the hell I was doing when I made this
  * 
- * Start of with the "preprocess" method which is the only public method here.
+ * Start of with the "preprocess" method which is the main entry point here. "preprocessAll" does the same, but for all versions at once.
  */
 
 
 /**
- * The main preprocessor component
+ * The main preprocessor component.
+ * 
+ * <p>A processor does not change after it was created. Everything that belongs to a single file is kept in a {@link Context},
+ * so one processor can preprocess any number of files and targets at the same time on different threads.
  * @author Scribble
  *
  */
 public class Processor {
-	private final Pattern regexBlocks = Pattern.compile("^\\s*\\/\\/ *(#+) *(.+)");
-	private final Pattern regexHashtag = Pattern.compile("^\\s*# *(#+) *(.+)");
-	private final Pattern regexPatterns = Pattern.compile("^.+\\/\\/ *@(.+);");
 	
-	private List<String> versions;
-	private Map<String, Map<String, String>> patterns;
+	/**
+	 * The comment syntax of every file ending, compiled into lexers
+	 */
+	private final CommentRegistry comments;
+	
+	/**
+	 * The versions of the project. Every version is referred to by its ordinal in this catalog
+	 */
+	private final VersionCatalog catalog;
+	private final Map<String, Map<String, String>> patterns;
+	
+	/**
+	 * The values of all {@link #patterns} compiled into one automaton, null if there are no patterns
+	 */
+	private final PatternMatcher patternMatcher;
+	
+	/**
+	 * The replacement of every pattern for every target, null if there are no patterns
+	 */
+	private final PatternTable patternTable;
 
 	/**
 	 * If the list should be inverted with the first one being the default
@@ -36,15 +82,19 @@ public class Processor {
 	private final boolean inverted;
 	
 	/**
-	 * Debug filename for errors during preprocessing
+	 * The versions and the inversion, hashed into the cache key of every {@link CompiledFile}
 	 */
-	private String filename = "undefined";
+	private final byte[] fingerprint;
 	
 	/**
-	 * Debug linecount for errors during preprocessing
+	 * Compiled files by their cache key. Shared by all processors, so the compiled files survive reconfiguring the project in the same gradle daemon
 	 */
-	private int linenumber = 0;
-	private Boolean versionEnabled = true;
+	private static final LRUCache<String, CompiledFile> cache = new LRUCache<>(4096);
+	
+	/**
+	 * The number of lines outside of version blocks that are written at once by {@link #preprocessAll(Reader, Map, String, String)}
+	 */
+	private static final int STREAM_BATCH = 1024;
 	
 	/**
 	 * Creates a new processor. The default will be the lowest version.
@@ -80,12 +130,44 @@ public class Processor {
 	 * @param patterns The patterns to check for in no specific order
 	 */
 	public Processor(List<String> versions, Map<String, Map<String, String>> patterns, boolean inverted) {
-		if(versions == null) {
+		this(versions == null ? null : new VersionCatalog(versions), patterns, inverted);
+	}
+	
+	/**
+	 * Creates a new processor from a {@link VersionCatalog}. The order can be inverted.
+	 * @see #Processor(List, Map, boolean)
+	 * @param catalog The versions to check for in an order
+	 * @param patterns The patterns to check for in no specific order
+	 * @param inverted If the list should be inverted with the first one being the default
+	 */
+	public Processor(VersionCatalog catalog, Map<String, Map<String, String>> patterns, boolean inverted) {
+		this(catalog, patterns, inverted, null);
+	}
+	
+	/**
+	 * Creates a new processor from a {@link VersionCatalog} with additional comment syntaxes.
+	 * @see #Processor(List, Map, boolean)
+	 * @param catalog The versions to check for in an order
+	 * @param patterns The patterns to check for in no specific order
+	 * @param inverted If the list should be inverted with the first one being the default
+	 * @param commentSyntax The comment characters by file ending, see {@link CommentRegistry}. Null to only use the built-in ones
+	 */
+	public Processor(VersionCatalog catalog, Map<String, Map<String, String>> patterns, boolean inverted, Map<String, String> commentSyntax) {
+		if(catalog == null) {
 			throw new NullPointerException("Versions can't be null!");
 		}
-		this.versions = versions;
+		this.catalog = catalog;
 		this.patterns = patterns;
 		this.inverted = inverted;
+		this.comments = new CommentRegistry(commentSyntax);
+		this.patternTable = patterns == null ? null : new PatternTable(catalog, patterns, inverted);
+		this.patternMatcher = patterns == null ? null : new PatternMatcher(patterns);
+		if (patternMatcher != null) {
+			for (String ambiguity : patternMatcher.getAmbiguities()) {
+				System.out.println(String.format("Ambiguous pattern: %s", ambiguity));
+			}
+		}
+		this.fingerprint = (String.join("\n", catalog.getVersions()) + "\n" + inverted).getBytes(StandardCharsets.UTF_8);
 	}
 	
 	/**
@@ -197,37 +279,541 @@ public class Processor {
 	 * @throws Exception 
 	 */
 	public List<String> preprocess(String targetVersion, List<String> lines, String filename, String fileending) throws Exception {
-		List<String> out = new ArrayList<>();
-		this.filename = filename;
-		this.linenumber = 0;
+		return preprocessTargets(Collections.singletonList(targetVersion), lines, filename, fileending, null).get(0);
+	}
+	
+	/**
+	 * Preprocesses the lines to every version in {@link #catalog} and to the base version (<code>null</code>) in one pass.
+	 * 
+	 * <p>The version blocks are only parsed once per file, the enabled state is then generated for every target.
+	 * 
+	 * @see #preprocess(String, List, String, String)
+	 * @param lines The lines to preprocess
+	 * @param filename Debug filename for errors during preprocessing
+	 * @param fileending The file ending of the file
+	 * @return The preprocessed lines of the file for each version, with the base version under the key <code>null</code>
+	 * @throws Exception If there are rule violations described in {@link #preprocess(String, List, String, String)}
+	 */
+	public Map<String, List<String>> preprocessAll(List<String> lines, String filename, String fileending) throws Exception {
+		return preprocessAll(lines, filename, fileending, null);
+	}
+	
+	/**
+	 * Preprocesses the lines to every version in {@link #catalog} and to the base version (<code>null</code>) in one pass.
+	 * 
+	 * <p>With the hash of the file, the compiled file is cached, so preprocessing the same file again skips parsing it.
+	 * 
+	 * @see #preprocessAll(List, String, String)
+	 * @param lines The lines to preprocess
+	 * @param filename Debug filename for errors during preprocessing
+	 * @param fileending The file ending of the file
+	 * @param hash The hash of the content of the file, see {@link com.minecrafttas.discombobulator.utils.FileManifest#hash(byte[])}. Null to not cache the file
+	 * @return The preprocessed lines of the file for each version, with the base version under the key <code>null</code>
+	 * @throws Exception If there are rule violations described in {@link #preprocess(String, List, String, String)}
+	 */
+	public Map<String, List<String>> preprocessAll(List<String> lines, String filename, String fileending, String hash) throws Exception {
+		List<String> targets = getTargets();
+		
+		List<List<String>> outs = preprocessTargets(targets, lines, filename, fileending, hash);
+		
+		Map<String, List<String>> out = new LinkedHashMap<>();
+		for (int i = 0; i < targets.size(); i++) {
+			out.put(targets.get(i), outs.get(i));
+		}
+		return out;
+	}
+	
+	/**
+	 * Preprocesses a file to multiple target versions while reading and writing it.
+	 * 
+	 * <p>Unlike {@link #preprocessAll(List, String, String)}, the file is never held in memory as a whole.
+	 * Lines outside of version blocks are written in batches of {@link #STREAM_BATCH} lines. A version block list is read until its closing <code>end</code>,
+	 * since the enabled state of a block depends on the other blocks in the list, then it is preprocessed and written. Only the largest block list has to fit into memory.
+	 * 
+	 * <p>Each line is written UTF-8 encoded with the line separator of the system, like {@link java.nio.file.Files#write(java.nio.file.Path, Iterable, java.nio.file.OpenOption...)}.
+	 * Targets with the same output share the rendered lines, which are encoded once and the same bytes are written to the outputs of all of those targets.
+	 * If an exception is thrown, the outputs contain the parts before the error. The outputs are not flushed or closed.
+	 * 
+	 * @see #preprocess(String, List, String, String)
+	 * @param reader The file to preprocess
+	 * @param outputs The output of every target version, with the base version under the key <code>null</code>
+	 * @param filename Debug filename for errors during preprocessing
+	 * @param fileending The file ending of the file
+	 * @throws Exception If there are rule violations described in {@link #preprocess(String, List, String, String)}
+	 */
+	public void preprocessAll(Reader reader, Map<String, OutputStream> outputs, String filename, String fileending) throws Exception {
+		preprocessAll(reader, outputs, filename, fileending, null);
+	}
+	
+	/**
+	 * Preprocesses a file to multiple target versions while reading and writing it.
+	 * 
+	 * <p>With the hash of the file, the compiled parts of the file are cached by the hash and the line the part starts at.
+	 * The parts only depend on the content of the file, so preprocessing the same file again, for example in the next run in the same gradle daemon, skips parsing it.
+	 * 
+	 * @see #preprocessAll(Reader, Map, String, String)
+	 * @param reader The file to preprocess
+	 * @param outputs The output of every target version, with the base version under the key <code>null</code>
+	 * @param filename Debug filename for errors during preprocessing
+	 * @param fileending The file ending of the file
+	 * @param hash The hash of the content of the file, see {@link com.minecrafttas.discombobulator.utils.FileManifest#hash(byte[])}. Null to not cache the file
+	 * @throws Exception If there are rule violations described in {@link #preprocess(String, List, String, String)}
+	 */
+	public void preprocessAll(Reader reader, Map<String, OutputStream> outputs, String filename, String fileending, String hash) throws Exception {
+		Context context = new Context(filename);
+		LineLexer lexer = comments.getLexer(fileending);
+		LineLexer.Token token = new LineLexer.Token();
+		
+		List<String> targets = new ArrayList<>(outputs.keySet());
+		List<OutputStream> targetOutputs = new ArrayList<>(outputs.values());
+		
+		BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+		List<String> batch = new ArrayList<>();
+		boolean inBlockList = false;
+		String line;
+		while ((line = in.readLine()) != null) {
+			lexer.lex(line, token);
+			boolean closesBlockList = false;
+			if (token.isStatement()) {
+				if (!inBlockList) {	// Write everything before the block list, so it doesn't have to be kept
+					writeBatch(targets, targetOutputs, batch, lexer, context, hash);
+					inBlockList = true;
+				}
+				closesBlockList = token.getLevel() == 1 && catalog.getOrdinal(token.getVersion(line)) == VersionCatalog.END;
+			}
+			batch.add(line);
+			
+			if (inBlockList ? closesBlockList : batch.size() >= STREAM_BATCH) {
+				writeBatch(targets, targetOutputs, batch, lexer, context, hash);
+				inBlockList = false;
+			}
+		}
+		writeBatch(targets, targetOutputs, batch, lexer, context, hash);	// The rest, including a block list that was never closed
+	}
+	
+	/**
+	 * Preprocesses a UTF-8 encoded file to multiple target versions while reading and writing it.
+	 * @see #preprocessAll(Reader, Map, String, String, String)
+	 * @param channel The file to preprocess
+	 * @param outputs The output of every target version, with the base version under the key <code>null</code>
+	 * @param filename Debug filename for errors during preprocessing
+	 * @param fileending The file ending of the file
+	 * @param hash The hash of the content of the file to cache the compiled file under, null to not cache it
+	 * @throws Exception If there are rule violations described in {@link #preprocess(String, List, String, String)}
+	 * @throws IOException If the file is not valid UTF-8, with the filename in the message
+	 */
+	public void preprocessAll(ReadableByteChannel channel, Map<String, OutputStream> outputs, String filename, String fileending, String hash) throws Exception {
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+		try {
+			preprocessAll(Channels.newReader(channel, decoder, -1), outputs, filename, fileending, hash);
+		} catch (CharacterCodingException e) {
+			throw new IOException(String.format("Could not preprocess %s, it is not valid UTF-8", filename), e);
+		}
+	}
+	
+	/**
+	 * Preprocesses the lines read so far and writes them to the outputs of the targets
+	 * @param batch The lines read so far, cleared afterwards
+	 * @param hash The hash of the content of the whole file, null to not cache the batch
+	 */
+	private void writeBatch(List<String> targets, List<OutputStream> outputs, List<String> batch, LineLexer lexer, Context context, String hash) throws Exception {
+		if (batch.isEmpty())
+			return;
+		String separator = System.lineSeparator();
+		String key = hash == null ? null : hash + ":" + context.linenumber;	// The batches of a file always start at the same lines
+		
+		// The rendered text and the outputs of all targets with the same output, by the first of those targets
+		List<StringBuilder> texts = new ArrayList<>();
+		List<List<OutputStream>> groups = new ArrayList<>();
+		render(targets, batch, lexer, context, key, new LineSink() {
+			
+			@Override
+			public void begin(int[] equivalents) {
+				for (int i = 0; i < equivalents.length; i++) {
+					texts.add(equivalents[i] == i ? new StringBuilder() : null);
+					groups.add(new ArrayList<>());
+				}
+				for (int i = 0; i < equivalents.length; i++) {
+					groups.get(equivalents[i]).add(outputs.get(i));
+				}
+			}
+			
+			@Override
+			public void line(int target, String prefix, String line, int offset) {
+				StringBuilder text = texts.get(target);
+				if (prefix != null)
+					text.append(prefix);
+				text.append(line, offset, line.length()).append(separator);
+			}
+		});
+		
+		// Encode the text of every group once and write the same bytes to every output of the group
+		CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+		for (int i = 0; i < texts.size(); i++) {
+			StringBuilder text = texts.get(i);
+			if (text == null)
+				continue;
+			ByteBuffer bytes = encoder.encode(CharBuffer.wrap(text));	// Fails on unpaired surrogates, like an OutputStreamWriter with a new encoder
+			for (OutputStream out : groups.get(i)) {
+				out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+			}
+		}
+		batch.clear();
+	}
+	
+	/**
+	 * Checks the encoded content of a file for version statements, pattern annotations and disabled lines, without decoding it.
+	 * A file without any of them is the same in every version and can be copied as it is.
+	 * @param bytes The UTF-8 encoded content of the file
+	 * @param fileending The file ending of the file
+	 * @return False if preprocessing would leave the file unchanged in every version
+	 */
+	public boolean containsMarkers(byte[] bytes, String fileending) {
+		return comments.getLexer(fileending).containsMarkers(bytes);
+	}
+	
+	/**
+	 * Preprocesses the lines to multiple target versions while only reading through the lines once.
+	 * 
+	 * <p>Targets that enable the same version blocks and resolve every pattern of the file to the same replacement render to the same lines.
+	 * Each of those outputs is only rendered once and shared by all targets that have it.
+	 * 
+	 * @param targets The versions for which lines should be enabled
+	 * @param lines The lines to preprocess
+	 * @param filename Debug filename for errors during preprocessing
+	 * @param fileending The file ending of the file
+	 * @param hash The hash of the content of the file to cache the compiled file under, null to not cache it
+	 * @return The preprocessed lines in the same order as the targets. Targets with the same output share the same list
+	 * @throws Exception If there are rule violations described in {@link #preprocess(String, List, String, String)}
+	 */
+	private List<List<String>> preprocessTargets(List<String> targets, List<String> lines, String filename, String fileending, String hash) throws Exception {
+		Context context = new Context(filename);
+		return render(targets, lines, comments.getLexer(fileending), context, hash);
+	}
+	
+	/**
+	 * Compiles and renders lines to multiple target versions. The lines can be a whole file or a part of it, that contains only complete version block lists
+	 * @param targets The versions for which lines should be enabled
+	 * @param lines The lines to preprocess
+	 * @param lexer The lexer for the comment syntax of the file
+	 * @param context The context of the file. The line number is the line of the first line in the file and is advanced past the last line
+	 * @param hash The hash of the content of the file to cache the compiled file under, null to not cache it
+	 * @return The preprocessed lines in the same order as the targets. Targets with the same output share the same list
+	 * @throws Exception If there are rule violations described in {@link #preprocess(String, List, String, String)}
+	 */
+	private List<List<String>> render(List<String> targets, List<String> lines, LineLexer lexer, Context context, String hash) throws Exception {
+		List<List<String>> outs = new ArrayList<>();
+		render(targets, lines, lexer, context, hash, new LineSink() {
+			
+			@Override
+			public void begin(int[] equivalents) {
+				for (int i = 0; i < equivalents.length; i++) {
+					outs.add(equivalents[i] == i ? new ArrayList<>(lines.size()) : outs.get(equivalents[i]));
+				}
+			}
+			
+			@Override
+			public void line(int target, String prefix, String line, int offset) {
+				String outLine = offset == 0 ? line : line.substring(offset);
+				outs.get(target).add(prefix == null ? outLine : prefix + outLine);
+			}
+		});
+		return outs;
+	}
+	
+	/**
+	 * Compiles and renders lines to multiple target versions, passing every rendered line to the sink.
+	 * 
+	 * <p>Lines that are enabled or disabled are not copied. The sink gets the original line with the offset past the leading disabled marker, or the marker as a prefix.
+	 * Only lines with patterns are turned into new strings.
+	 * 
+	 * @param targets The versions for which lines should be enabled
+	 * @param lines The lines to preprocess
+	 * @param lexer The lexer for the comment syntax of the file
+	 * @param context The context of the file. The line number is the line of the first line in the file and is advanced past the last line
+	 * @param hash The hash of the content of the file to cache the compiled file under, null to not cache it
+	 * @param sink Receives the rendered lines of the first target of every group of targets with the same output
+	 * @throws Exception If there are rule violations described in {@link #preprocess(String, List, String, String)}
+	 */
+	private void render(List<String> targets, List<String> lines, LineLexer lexer, Context context, String hash, LineSink sink) throws Exception {
+		int firstLine = context.linenumber;
+		CompiledFile compiled = compile(lines, lexer, context, hash);
+		
+		int[] targetIndices = new int[targets.size()];
+		for (int i = 0; i < targets.size(); i++) {
+			targetIndices[i] = getTargetIndex(targets.get(i), compiled);
+		}
 		
-		boolean useHashtags = shouldUseHashTag(fileending);
-		ConcurrentLinkedQueue<Boolean> enabledQueue = new ConcurrentLinkedQueue<>();
+		// Only render the first target of every group of targets with the same output
+		int[] equivalents = findEquivalentTargets(targetIndices, compiled);
+		List<Integer> rendered = new ArrayList<>();
+		for (int i = 0; i < targets.size(); i++) {
+			if (equivalents[i] == i) {
+				rendered.add(i);
+			}
+		}
+		sink.begin(equivalents);
+		
+		String disabledPrefix = lexer.getDisabledPrefix();
+		boolean[] versionEnabled = new boolean[targets.size()];
+		Arrays.fill(versionEnabled, true);	// Everything outside of a version block is enabled
+		int statement = 0;
+		int pattern = 0;
 		
 		for (String line : lines) {
-			linenumber++;
 			
 			// ====== Version Blocks
 			
-			if(containsStatement(line, useHashtags)) {
-				if(enabledQueue.isEmpty()) {
-					enabledQueue = generateEnabledQueue(lines, useHashtags, targetVersion);
-				}
+			int lineIndex = context.linenumber - firstLine;
+			boolean isStatement = statement < compiled.size() && compiled.getLine(statement) == lineIndex;
+			boolean isDisabled = line.startsWith(disabledPrefix);
+			
+			String patternNames = null;
+			if (pattern < compiled.getPatternCount() && compiled.getPatternLine(pattern) == lineIndex) {
+				patternNames = compiled.getPatternNames(pattern);
+				pattern++;
 			}
+			context.linenumber++;
 			
-			line = preprocessVersionBlock(line, targetVersion, enabledQueue, useHashtags);
+			for (int i : rendered) {
+				String prefix = null;
+				int offset = 0;
+				if(isStatement) {
+					versionEnabled[i] = compiled.isEnabled(targetIndices[i], statement);
+				} else if (versionEnabled[i] && isDisabled) {
+					offset = disabledPrefix.length();	// Only the leading marker is removed, markers further in the line stay
+				} else if (!versionEnabled[i] && !isDisabled) {
+					prefix = disabledPrefix;
+				}
+				
+				// ====== Patterns
+				
+				if (patterns != null && patternNames != null) {
+					String outLine = offset == 0 ? line : line.substring(offset);
+					if (prefix != null)
+						outLine = prefix + outLine;
+					sink.line(i, null, preprocessPattern(outLine, patternNames, targetIndices[i], context), 0);
+					continue;
+				}
+				
+				// =====================
+				
+				sink.line(i, prefix, line, offset);
+			}
 			
-			// ====== Patterns
+			if(isStatement) {
+				statement++;
+			}
+		}
+	}
+	
+	/**
+	 * Receives the rendered lines of {@link Processor#render(List, List, LineLexer, Context, String, LineSink)}.
+	 * A rendered line is a part of the original line with an optional prefix, so enabling or disabling a line doesn't need a new string
+	 */
+	private interface LineSink {
+		
+		/**
+		 * Called once before the first line
+		 * @param equivalents For every target, the first target with the same output
+		 */
+		public void begin(int[] equivalents);
+		
+		/**
+		 * Called for every line of the first target of every group of targets with the same output
+		 * @param target The index of the target
+		 * @param prefix The text before the line, may be null
+		 * @param line The original line
+		 * @param offset The index of the first character of the line that belongs to the output
+		 */
+		public void line(int target, String prefix, String line, int offset);
+	}
+	
+	/**
+	 * Groups the targets by their output. The output of a target only depends on which version blocks are enabled and what the patterns of the file are replaced with
+	 * @param targetIndices The index of every target in the {@link CompiledFile}
+	 * @param compiled The compiled file
+	 * @return For every target, the first target with the same output. The target itself if there is none before it
+	 */
+	private int[] findEquivalentTargets(int[] targetIndices, CompiledFile compiled) {
+		// Every pattern used in the file
+		Set<String> usedPatterns = new LinkedHashSet<>();
+		if (patterns != null) {
+			for (int pattern = 0; pattern < compiled.getPatternCount(); pattern++) {
+				for (String name : compiled.getPatternNames(pattern).split(",")) {
+					if (patternTable.contains(name.trim()))
+						usedPatterns.add(name.trim());
+				}
+			}
+		}
+		
+		Map<List<Object>, Integer> firstTargets = new HashMap<>();
+		int[] equivalents = new int[targetIndices.length];
+		for (int i = 0; i < targetIndices.length; i++) {
+			BitSet enabled = new BitSet(compiled.size());
+			for (int statement = 0; statement < compiled.size(); statement++) {
+				if (compiled.isEnabled(targetIndices[i], statement))
+					enabled.set(statement);
+			}
+			List<String> replacements = new ArrayList<>(usedPatterns.size());
+			for (String name : usedPatterns) {
+				replacements.add(patternTable.getReplacement(name, targetIndices[i]));
+			}
 			
-			if (patterns != null) {
-				line = preprocessPattern(line, targetVersion);
+			Integer first = firstTargets.putIfAbsent(Arrays.asList(enabled, replacements), i);
+			equivalents[i] = first == null ? i : first;
+		}
+		return equivalents;
+	}
+	
+	/**
+	 * @return All versions from {@link #catalog} with the base version <code>null</code> at the end. The order matches the targets in {@link CompiledFile}
+	 */
+	private List<String> getTargets() {
+		List<String> targets = new ArrayList<>(catalog.getVersions());
+		targets.add(null);
+		return targets;
+	}
+	
+	/**
+	 * @param targetVersion The version for which lines should be enabled
+	 * @param compiled The compiled file
+	 * @return The index of the target in the {@link CompiledFile}
+	 */
+	private int getTargetIndex(String targetVersion, CompiledFile compiled) {
+		if (targetVersion == null) {
+			return catalog.size();
+		}
+		int index = catalog.contains(targetVersion) ? catalog.getOrdinal(targetVersion) : -1;
+		if (index == -1 && !compiled.isEmpty()) {
+			throw new RuntimeException(String.format("The target version %s was not found", targetVersion));
+		}
+		return index;
+	}
+	
+	/*========================================================
+	   _____                      _ _ _             
+	  / ____|                    (_) (_)            
+	 | |     ___  _ __ ___  _ __  _| |_ _ __   __ _ 
+	 | |    / _ \| '_ ` _ \| '_ \| | | | '_ \ / _` |
+	 | |___| (_) | | | | | | |_) | | | | | | | (_| |
+	  \_____\___/|_| |_| |_| .__/|_|_|_|_| |_|\__, |
+	                       | |                 __/ |
+	                       |_|                |___/ 
+	==========================================================
+	
+	*
+	* Everything needed to turn the lines of a file into a CompiledFile.
+	* 
+	*/
+	
+	/**
+	 * <p>Compiles a file into a {@link CompiledFile}, containing every version statement and whether it is enabled for every target, as well as every pattern annotation.
+	 * 
+	 * <p>Every line is classified exactly once by the {@link LineLexer}, after that only the version statements are looked at.
+	 * 
+	 * <p>If the hash of the file is known, the result is cached by it, so compiling the same file again, for example in another run in the same gradle daemon, skips parsing the file.
+	 * 
+	 * @param lines The lines of the file
+	 * @param lexer The lexer for the comment syntax of the file
+	 * @param context The context of the file, for errors during compiling
+	 * @param hash The hash of the content of the file, null to not cache the result
+	 * @return The compiled file
+	 * @throws Exception If there are rule violations described in {@link #preprocess(String, List, String, String)}
+	 */
+	private CompiledFile compile(List<String> lines, LineLexer lexer, Context context, String hash) throws Exception {
+		String key = hash == null ? null : getCacheKey(hash, lexer);
+		CompiledFile compiled = key == null ? null : cache.get(key);
+		if (compiled != null) {
+			return compiled;
+		}
+		
+		/*Classify the lines*/
+		LineLexer.Token token = new LineLexer.Token();
+		
+		List<Statement> statements = new ArrayList<>();
+		List<Integer> patternLines = new ArrayList<>();
+		List<String> patternNames = new ArrayList<>();
+		
+		for (int lineCount = 0; lineCount < lines.size(); lineCount++) {
+			String line = lines.get(lineCount);
+			lexer.lex(line, token);
+			if (token.isStatement()) {
+				String version = token.getVersion(line);
+				statements.add(new Statement(lineCount, token.getLevel(), version, catalog.getOrdinal(version)));
+			}
+			if (token.hasPatterns()) {
+				patternLines.add(lineCount);
+				patternNames.add(token.getPatterns(line));
 			}
+		}
+		
+		/*Generate the enabled state of every statement*/
+		int targetCount = catalog.size() + 1;	// All versions and the base version
+		
+		int[] levels = new int[statements.size()];
+		int[] versionIndices = new int[statements.size()];
+		int[] parents = new int[statements.size()];
+		boolean[][] enabled = new boolean[targetCount][statements.size()];
+		
+		ArrayDeque<VersionBlock> pendingBlocks = new ArrayDeque<>();
+		
+		for (int statementIndex = 0; statementIndex < statements.size(); statementIndex++) {
+			Statement statement = statements.get(statementIndex);
 			
-			// =====================
+			if (pendingBlocks.isEmpty()) {	// Start of a new version block list. Generate the enabled state for all targets at once
+				VersionBlockList blockList = generateBlockList(statements, statementIndex, 1, null, context).right();
+				blockList.getStatements(pendingBlocks);
+				generateEnabledStates(blockList, enabled);
+			}
 			
-			out.add(line);
+			VersionBlock block = pendingBlocks.poll();
+			if (block != null) {
+				levels[statementIndex] = block.level;
+				versionIndices[statementIndex] = block.getVersionIndex();
+				parents[statementIndex] = block.parent == null ? -1 : block.parent.statement;
+			} else {
+				for (int i = 0; i < targetCount; i++) {
+					enabled[i][statementIndex] = true;	// A statement without a block, e.g. if the block list was never closed, enables the following lines
+				}
+				levels[statementIndex] = statement.level;
+				versionIndices[statementIndex] = getIndex(statement.ordinal);
+				parents[statementIndex] = -1;
+			}
 		}
 		
+		int[] statementLines = new int[statements.size()];
+		for (int i = 0; i < statementLines.length; i++) {
+			statementLines[i] = statements.get(i).line;
+		}
+		
+		compiled = new CompiledFile(lines.size(), statementLines, levels, versionIndices, parents, enabled, toArray(patternLines), patternNames.toArray(new String[0]));
+		if (key != null)
+			cache.put(key, compiled);
+		return compiled;
+	}
+	
+	/**
+	 * Hashes the hash of the file together with everything that changes the outcome of {@link #compile(List, LineLexer, Context, String)}
+	 * @param hash The hash of the content of the file
+	 * @param lexer The lexer for the comment syntax of the file
+	 * @return The key for {@link #cache}
+	 * @throws NoSuchAlgorithmException
+	 */
+	private String getCacheKey(String hash, LineLexer lexer) throws NoSuchAlgorithmException {
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		digest.update(fingerprint);
+		digest.update(lexer.getCommentChars().getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) '\n');
+		digest.update(hash.getBytes(StandardCharsets.UTF_8));
+		return HexFormat.of().formatHex(digest.digest());
+	}
+	
+	private int[] toArray(List<Integer> list) {
+		int[] out = new int[list.size()];
+		for (int i = 0; i < out.length; i++) {
+			out[i] = list.get(i);
+		}
 		return out;
 	}
 	
@@ -247,9 +833,9 @@ public class Processor {
 	*/
 
 	/**
-	 * <p>Searches through the text in advance to generate a queue that tells {@linkplain #preprocessVersionBlock(String, String, ConcurrentLinkedQueue, boolean)} if that block should be enabled or not.
+	 * <p>Searches through the text in advance to tell {@linkplain #compile(List, LineLexer, Context, String)} if that block should be enabled or not.
 	 * 
-	 * <p>Here are the 4 steps this method runs through:
+	 * <p>Here are the 3 steps this method runs through:
 	 * 
 	 * <h2>1.Generate the blockList</h2>
 	 * Generates a list of version blocks by prereading the block. To take nesting into account, it generates the lists recursively. Most of the error checking is done here.
@@ -263,7 +849,7 @@ public class Processor {
    	 * end
 	 * </pre>
 	 * <h2>2.Sort by version index</h2>
-	 * For knowing what versions we have to enable, we first need to correctly sort the versions in the order as they appear in {@link #versions}
+	 * For knowing what versions we have to enable, we first need to correctly sort the versions in the order as they appear in {@link #catalog}
 	 * <pre>
 	 * 1.18.1
 	 * 1.16.1
@@ -293,94 +879,68 @@ public class Processor {
 	 * // # end
 	 * }	<-Outside a block, so line is not commented out by default
 	 * </pre>
-	 * <h2>4.Sort by appearence</h2>
-	 * After assigning the state, we need to return to the initial state before sorting. To do this, we sort out list again by appearence.
+	 * <h2>Storing the state</h2>
+	 * While enabling, every block writes its state directly into the array of the target, at the index of its statement.
+	 * Since the index is the order of appearence, the list does not have to be sorted back:
 	 * <pre>
 	 * =======Target Version: 1.17.1
-	 * 1.16.1: true
-	 * 	1.16.5: false
-	 * 	1.17.1: true
-	 * 	end: true
-	 * 1.18.1: false
-   	 * def: false
-   	 * end: true
-	 * </pre>
-	 * <h2>Generating a queue from the versions</h2>
-	 * Now we can read out the booleans recursively and add them to a queue
-	 * <pre>
-	 * true,
-	 * false,
-	 * true,
-	 * true,
-	 * false,
-	 * false,
-	 * true
+	 * [0] 1.16.1: true
+	 * [1] 	1.16.5: false
+	 * [2] 	1.17.1: true
+	 * [3] 	end: true
+	 * [4] 1.18.1: false
+	 * [5] def: false
+	 * [6] end: true
 	 * </pre>
-	 * This can be used in {@link #preprocessVersionBlock(String, String, ConcurrentLinkedQueue, boolean)} to enable or disable the lines.
-	 * @param lines
-	 * @param useHashTag
-	 * @return A queue with booleans matching the number of version statements in the version block
-	 * @throws Exception 
+	 * This is stored in the {@link CompiledFile} to enable or disable the lines.
+	 * <p>The blockList is generated and sorted once in {@link #compile(List, LineLexer, Context, String)}, step 3 is then repeated for every target.
+	 * 
+	 * @param blockList The blockList generated by {@link #generateBlockList(List, int, int, VersionBlock, Context)}
+	 * @param enabled The enabled state to fill, indexed by target and then by statement. Every ordinal in the {@link #catalog} is a target, the base version is the last target
 	 */
-	private ConcurrentLinkedQueue<Boolean> generateEnabledQueue(List<String> lines, boolean useHashTag, String targetVersion) throws Exception {
+	private void generateEnabledStates(VersionBlockList blockList, boolean[][] enabled) {
 		
-		if (targetVersion != null && !versions.contains(targetVersion)) {
-			throw new RuntimeException(String.format("The target version %s was not found", targetVersion, filename, linenumber));
-		}
-		
-		VersionBlockList blockList = generateBlockList(lines, linenumber-1, useHashTag, 1, null).right();
 		blockList.sortByVersionIndex();
-		blockList.setEnabledVersion(targetVersion);
-		blockList.sortByAppearence();
-//		System.out.println("=======================Target: "+targetVersion+"\n"+blockList);		// Enable this to print the blocks
-		return blockList.getQueue();
+		for (int target = 0; target < enabled.length; target++) {
+			blockList.setEnabledVersion(target, enabled[target]);
+//			System.out.println("=======================Target: "+target+"\n"+blockList);		// Enable this to print the blocks
+		}
 	}
 	
 	/**
-	 * Parses the lines with the given start line recursively and returns a {@link VersionBlockList} with {@link VersionBlock} inside.<br>
+	 * Parses the statements with the given start statement recursively and returns a {@link VersionBlockList} with {@link VersionBlock} inside.<br>
 	 * Those VersionBlocks still have nested version lists
-	 * @param lines The total lines in this file
-	 * @param startLine The starting line of when to search
-	 * @param useHashTag If a hashtags for comments should be used instead of //
+	 * @param statements All version statements in this file
+	 * @param startStatement The index of the statement of when to search
 	 * @param parentNestingLevel The nesting level. Increases with each recursion step
-	 * @return A pair with the line count on left, and the block numbers on right. Line count is used to skip the already processed lines
+	 * @param parent The version block containing this list, null in the first nesting level
+	 * @param context The context of the file, for errors during compiling
+	 * @return A pair with the statement count on left, and the block numbers on right. Statement count is used to skip the already processed statements
 	 * @throws Exception If there are rule violations described in {@link #preprocess(String, List, String, String)}
 	 */
-	private Pair<Integer, VersionBlockList> generateBlockList(List<String> lines, int startLine, boolean useHashTag, int parentNestingLevel, VersionBlock parent) throws Exception {
+	private Pair<Integer, VersionBlockList> generateBlockList(List<Statement> statements, int startStatement, int parentNestingLevel, VersionBlock parent, Context context) throws Exception {
+		String filename = context.filename;
 		
 		VersionBlockList blockList = new VersionBlockList();
-		int index = 0;
-		int lineCount;
+		int statementCount;
 		
 		VersionBlock currentBlock=null;
 		
 		/*Reading ahead and storing the version statements in blockList*/
-		for(lineCount = startLine; lineCount<lines.size(); lineCount++) {
-			
-			String line = lines.get(lineCount);
-			
-			/*Generate different matchers depending if the file uses hashtag as comments or not*/
-			Matcher matcher;
-			if(!useHashTag) {
-				matcher = regexBlocks.matcher(line);
-			}else {
-				matcher = regexHashtag.matcher(line);
-			}
-			
-			if(!matcher.find()) {	// Skip if it can't find a version statement in this line. e.g. //# 1.12.2
-				continue;
-			}
+		for(statementCount = startStatement; statementCount<statements.size(); statementCount++) {
 			
 			/*Read the version statement*/
-			String version = matcher.group(2);
-			int level = matcher.group(1).length();	// Nesting level of this version statement
+			Statement statement = statements.get(statementCount);
+			int version = statement.ordinal;
+			int level = statement.level;	// Nesting level of this version statement
+			int lineCount = context.linenumber + statement.line;	// The statements are counted from the first compiled line
 			
 			/*Error checking*/
-			if(!version.equals("end") && !version.equals("def") && !versions.contains(version)) {
-				throw new RuntimeException(String.format("The specified version %s in %s in line %s was not found", version, filename, lineCount+1));
+			if(version == VersionCatalog.NOT_FOUND) {
+				throw new RuntimeException(String.format("The specified version %s in %s in line %s was not found", statement.version, filename, lineCount+1));
 			}
 			
-			if(lineCount == startLine && version.equals("end")) {
+			if(statementCount == startStatement && version == VersionCatalog.END) {
 				throw new Exception(String.format("Unexpected 'end' found in line %s in %s", lineCount+1, filename));
 			}
 			
@@ -389,10 +949,10 @@ public class Processor {
 			
 			if(level == parentNestingLevel+1) {	// If the new nesting level is higher than the nesting level of the parent block
 				
-				checkForNestingErrors(version, currentBlock.version, level, lineCount);
+				checkForNestingErrors(version, currentBlock.version, level, lineCount, filename);
 				
-				nestedVersions = generateBlockList(lines, lineCount, useHashTag, level, currentBlock);	// Start recursion to generate the blockList in the next nesting level
-				lineCount = nestedVersions.left();	// nestedVersions.left()=lineCount from nested versions. Since we already processed these lines in the recursion we can skip these lines here.
+				nestedVersions = generateBlockList(statements, statementCount, level, currentBlock, context);	// Start recursion to generate the blockList in the next nesting level
+				statementCount = nestedVersions.left();	// nestedVersions.left()=statementCount from nested versions. Since we already processed these statements in the recursion we can skip these statements here.
 				
 				if(!nestedVersions.right().isEmpty()) {
 					currentBlock.addNestedVersionBlockList(nestedVersions.right());	// Add nested versions to the parent block
@@ -400,11 +960,9 @@ public class Processor {
 			}
 			else if(level == parentNestingLevel) {	// If the level stays the same
 				if(currentBlock!=null) {
-					index++; // Increase the blockList index
-					
 					blockList.addBlock(currentBlock);
 				}
-				currentBlock = new VersionBlock(parent, version, index, level);
+				currentBlock = new VersionBlock(parent, version, level, statementCount);
 			}
 			else if(level == parentNestingLevel-1) {
 				throw new Exception(String.format("Missing an end for nesting before line %s in %s", lineCount+1, filename));
@@ -414,30 +972,83 @@ public class Processor {
 			}
 			
 			if(blockList.contains(version)) {
-				throw new Exception(String.format("Duplicate version definition %s found in line %s in %s", version, lineCount+1, filename));
+				throw new Exception(String.format("Duplicate version definition %s found in line %s in %s", statement.version, lineCount+1, filename));
 			}
 			
 			/*End condition*/
-			if(version.equals("end") && level == parentNestingLevel) {	
+			if(version == VersionCatalog.END && level == parentNestingLevel) {	
 				blockList.addBlock(currentBlock);
 				break;
 			}
 			
 		}
-		return Pair.of(lineCount, blockList);
+		return Pair.of(statementCount, blockList);
 	}
 	
-	private int getIndex(String version) {
-		int versionIndex = versions.indexOf(version);
-		if("def".equals(version)) {
+	/**
+	 * @param version The ordinal of the version from the {@link #catalog}
+	 * @return The index of the version used for sorting. "def" resolves to the default version, "end" to -1
+	 */
+	private int getIndex(int version) {
+		if(version == VersionCatalog.DEF) {
 			if (!inverted)
-				versionIndex = versions.size() - 1;
+				return catalog.size() - 1;
 			else
-				versionIndex = 0;
+				return 0;
+		}
+		if(version < 0) {
+			return -1;
 		}
-		return versionIndex;
+		return version;
 	}
 
+	/**
+	 * A version statement as found by the {@link LineLexer}, e.g. <code>//## 1.16.5</code>
+	 */
+	private static class Statement {
+		/**
+		 * The 0 based line index of the statement
+		 */
+		private final int line;
+		/**
+		 * The nesting level of the statement
+		 */
+		private final int level;
+		/**
+		 * The version of the statement, including "def" and "end"
+		 */
+		private final String version;
+		/**
+		 * The ordinal of {@link #version} in the {@link Processor#catalog}
+		 */
+		private final int ordinal;
+		
+		public Statement(int line, int level, String version, int ordinal) {
+			this.line = line;
+			this.level = level;
+			this.version = version;
+			this.ordinal = ordinal;
+		}
+	}
+	
+	/**
+	 * Everything that belongs to preprocessing a single file. A new context is created for every call, so the processor itself can be shared between threads
+	 */
+	private static class Context {
+		/**
+		 * Debug filename for errors during preprocessing
+		 */
+		private final String filename;
+		/**
+		 * Debug linecount for errors during preprocessing
+		 */
+		private int linenumber = 0;
+		
+		public Context(String filename) {
+			this.filename = filename;
+		}
+	}
+	
 	/**
 	 * <p>A structural component which defines single version block
 	 * 
@@ -449,7 +1060,7 @@ public class Processor {
 	 * <p>In this case, the version is 1.16.1, the nesting level is 1.<br>
 	 * Note that the "def" and "end" keywords are also considered as a "version block" with special behaviour.
 	 * 
-	 * <p>A version can be disabled or enabled, after the list generation was completed in {@link VersionBlockList#setEnabledVersion(String)}
+	 * <p>A version can be disabled or enabled, after the list generation was completed in {@link VersionBlockList#setEnabledVersion(int, boolean[])}
 	 * 
 	 * <h2>Nesting</h2>
 	 * 
@@ -481,13 +1092,9 @@ public class Processor {
 	 */
 	private class VersionBlock {
 		/**
-		 * The string version of this version block.
+		 * The ordinal of the version of this version block in the {@linkplain Processor#catalog}. {@link VersionCatalog#DEF} or {@link VersionCatalog#END} for "def" and "end"
 		 */
-		private String version;
-		/**
-		 * The index in the {@linkplain VersionBlockList} it is contained in. Used in {@link #sortByAppearence()}
-		 */
-		private int index;
+		private int version;
 		/**
 		 * The nesting level this VerisonBlock has. Currently only used for printing purposes.
 		 */
@@ -504,19 +1111,23 @@ public class Processor {
 		 * The parent version block, used for getting parent information in the nesting block. Null if this block is in the first nesting level and doesn't have a parent.
 		 */
 		private VersionBlock parent;
+		/**
+		 * The index of the statement of this VersionBlock in the file, in order of appearence. The enabled state is stored at this index
+		 */
+		private int statement;
 		
 		/**
 		 * @see VersionBlock
 		 * @param parent
 		 * @param version
-		 * @param index
 		 * @param level
+		 * @param statement
 		 */
-		public VersionBlock(VersionBlock parent, String version, int index, int level) {
+		public VersionBlock(VersionBlock parent, int version, int level, int statement) {
 			this.parent = parent;
 			this.version = version;
-			this.index = index;
 			this.level = level;
+			this.statement = statement;
 		}
 		
 		/**
@@ -529,7 +1140,7 @@ public class Processor {
 		
 		@Override
 		public String toString() {
-			String out = "   ".repeat(level-1)+version+": "+enabled+"\n";
+			String out = "   ".repeat(level-1)+catalog.getName(version)+": "+enabled+"\n";
 			for(VersionBlockList list : nestedBlockLists) {
 				out=out.concat(list.toString());
 			}
@@ -551,7 +1162,7 @@ public class Processor {
 		/**
 		 * Returns the version index of this versionBlock used for sorting.
 		 * 
-		 * For example if {@linkplain Processor#versions} contains:
+		 * For example if {@linkplain Processor#catalog} contains:
 		 * 
 		 * <pre>
 		 * 1.18.1
@@ -571,16 +1182,16 @@ public class Processor {
 		 * </pre>
 		 * 
 		 * 
-		 * @return The index of the specified version from {@linkplain Processor#versions}
+		 * @return The index of the specified version from {@linkplain Processor#catalog}
 		 */
 		public int getVersionIndex() {
-			if(version.equals("end")) {	// Special behaviour if the version is "end"
+			if(version == VersionCatalog.END) {	// Special behaviour if the version is "end"
 				if(!inverted)
-					return versions.size();
+					return catalog.size();
 				else
 					return -1;
 			}
-			if(version.equals("def") && parent != null) {	// If this is a nested block and version is def, use the parent version. This also works recursively
+			if(version == VersionCatalog.DEF && parent != null) {	// If this is a nested block and version is def, use the parent version. This also works recursively
 				return parent.getVersionIndex();
 			}
 			return getIndex(version);
@@ -598,38 +1209,26 @@ public class Processor {
 			}
 		}
 		
-		/**
-		 * Sorts the {@link #nestedBlockLists} by {@link #index} recursively
-		 * @see VersionBlockList#sortByAppearence()
-		 */
-		public void sortByAppearence() {
-			for(VersionBlockList list : nestedBlockLists) {
-				list.sortByAppearence();
-			}
-		}
-		
 		//====================================== Enable/Disable
 		
 		public void setEnabled(boolean enabled) {
 			this.enabled = enabled;
 		}
 		
-		public void setEnabledVersion(String targetVersion) {
+		public void setEnabledVersion(int target, boolean[] out) {
 			for (VersionBlockList versionBlockList : nestedBlockLists) {
-				versionBlockList.setEnabledVersion(targetVersion);
+				versionBlockList.setEnabledVersion(target, out);
 			}
 		}
 
-		//====================================== Queue Generation
 		/**
-		 * @return A queue with enabled/disabled versions from {@link #nestedBlockLists}, generated recursively
+		 * Adds the version blocks from {@link #nestedBlockLists} to the list in order of appearence, recursively
+		 * @param out The list to add the blocks to
 		 */
-		public ConcurrentLinkedQueue<Boolean> getQueue() {
-			ConcurrentLinkedQueue<Boolean> out = new ConcurrentLinkedQueue<>();
-			for (VersionBlockList block : nestedBlockLists) {
-				out.addAll(block.getQueue());
+		public void getStatements(Collection<VersionBlock> out) {
+			for (VersionBlockList list : nestedBlockLists) {
+				list.getStatements(out);
 			}
-			return out;
 		}
 		
 	}
@@ -652,9 +1251,14 @@ public class Processor {
 	 */
 	private class VersionBlockList {
 		private List<VersionBlock> blocks = new ArrayList<>();
+		/**
+		 * The ordinals of all versions in {@link #blocks}, shifted by {@link VersionCatalog#END} so "def" and "end" fit in as well
+		 */
+		private BitSet definedVersions = new BitSet();
 		
 		public void addBlock(VersionBlock block) {
 			blocks.add(block);
+			definedVersions.set(block.version - VersionCatalog.END);
 		}
 		
 		public boolean isEmpty() {
@@ -678,19 +1282,26 @@ public class Processor {
 			return i;
 		}
 		
-		public boolean contains(String version) {
+		/**
+		 * Adds all version blocks and their nested blocks to the list in order of appearence.
+		 * Has to be called before sorting the list.
+		 * @param out The list to add the blocks to
+		 */
+		public void getStatements(Collection<VersionBlock> out) {
 			for (VersionBlock block : blocks) {
-				if(block.version.equals(version)) {
-					return true;
-				}
+				out.add(block);
+				block.getStatements(out);
 			}
-			return false;
+		}
+		
+		public boolean contains(int version) {
+			return definedVersions.get(version - VersionCatalog.END);
 		}
 		
 		//====================================== Sorting
 		
 		/**
-		 * Sorts all blocks by the order of when they appear in {@linkplain Processor#versions}
+		 * Sorts all blocks by the order of when they appear in {@linkplain Processor#catalog}
 		 */
 		public void sortByVersionIndex() {
 			blocks.sort((left, right)->{
@@ -704,27 +1315,16 @@ public class Processor {
 			}
 		}
 		
-		/**
-		 * Sorts all blocks by the order of the {@linkplain VersionBlock#index}
-		 */
-		public void sortByAppearence() {
-			blocks.sort((left, right)->{
-				int compare = Integer.compare(left.index, right.index);
-				return compare;
-			});
-			for(VersionBlock block : blocks) {
-				block.sortByAppearence(); // Start of recursive sorting
-			}
-		}
-		
 		//====================================== Enable/Disable
 		
 		/**
 		 * Main logic of enabeling/disabeling versions and searching through the list
-		 * @param targetVersion
+		 * @param target The ordinal of the target version, the size of the {@linkplain Processor#catalog} for the base version
+		 * @param out The enabled state of the target, indexed by statement
 		 */
-		public void setEnabledVersion(String targetVersion) {
-			int targetIndex = getIndex(targetVersion);
+		public void setEnabledVersion(int target, boolean[] out) {
+			int targetIndex = target;
+			boolean isBase = target == catalog.size();
 			
 			boolean found = false;
 			
@@ -734,17 +1334,17 @@ public class Processor {
 				
 				boolean enabled = false; // Whether the current block is enabled or not
 				
-				if(block.version.equals("end")) {	// If the version equals end
+				if(block.version == VersionCatalog.END) {	// If the version equals end
 					if(block.parent != null) {
 						enabled = block.parent.enabled;	// If we are inside a nested block, we will return to the parent block after the end, 
 														// therefore we have to set it enabled according to the parent version
 					}
 					else {
-						enabled=true;		// If this block is the last end in the list, set it to true. See javadoc for generateEnableQueue under Step 3
+						enabled=true;		// If this block is the last end in the list, set it to true. See javadoc for generateEnabledStates under Step 3
 					}
 				}
 				
-				else if(targetVersion == null) {	// If the targetVersion is null, nothing inside a version block should be enabled
+				else if(isBase) {	// If the target is the base version, nothing inside a version block should be enabled
 					enabled = false;
 				}
 				
@@ -768,82 +1368,28 @@ public class Processor {
 					}
 				}
 				block.setEnabled(enabled);
-				block.setEnabledVersion(targetVersion); // Start of recursive actions
+				out[block.statement] = enabled;
+				block.setEnabledVersion(target, out); // Start of recursive actions
 			}
 		}
 		
-		//====================================== Queue Generation
-		
-		public ConcurrentLinkedQueue<Boolean> getQueue(){
-			ConcurrentLinkedQueue<Boolean> out = new ConcurrentLinkedQueue<Boolean>();
-			for(VersionBlock block: blocks) {
-				out.add(block.enabled);
-				out.addAll(block.getQueue());
-			}
-			
-			return out;
-		}
 		//========================================================
 	}
 	
-	private boolean shouldUseHashTag(String fileending) {
-		return "accesswidener".equals(fileending);
-	}
-	
-	private String preprocessVersionBlock(String line, String targetVersion, ConcurrentLinkedQueue<Boolean> enabledQueue, boolean useHashTag) throws Exception {
-		if (containsStatement(line, useHashTag)) {
-			versionEnabled = enabledQueue.poll();
-			return line;
-		}
-		if(versionEnabled == null) {
-			versionEnabled = true;
-		}
-		return enableLine(line, versionEnabled, useHashTag);
-	}
-	
-	/**
-	 * @param line The line to check
-	 * @param useHashTags Whether to search for hashtags or // as comments
-	 * @return If this line contains a versionBlock statement
-	 */
-	private boolean containsStatement(String line, boolean useHashTags) {
-		return (useHashTags && Pattern.matches(regexHashtag.pattern(), line)) || (!useHashTags && Pattern.matches(regexBlocks.pattern(), line));
-	}
-
-	/**
-	 * Comments out or uncomments a line.
-	 * @param line The line to change
-	 * @param enable True if line should be enabled
-	 * @return The new line
-	 */
-	private String enableLine(String line, boolean enable, boolean useHashTag) {
+	private void checkForNestingErrors(int nestedVer, int parentVer, int nestingLevel, int lineCount, String filename) throws Exception {
 		
-		String commentChars = "//";
-		if(useHashTag) {
-			commentChars = "#";
-		}
-		
-		boolean isDisabled = line.startsWith(commentChars+"$$");
-		if (enable)
-			return isDisabled ? line.replace(commentChars+"$$", "") : line;
-		else
-			return isDisabled ? line : commentChars+"$$" + line;
-	}
-
-	private void checkForNestingErrors(String nestedVer, String parentVer, int nestingLevel, int lineCount) throws Exception {
-		
-		if(nestedVer.equals("end")) {
+		if(nestedVer == VersionCatalog.END) {
 			throw new Exception(String.format("Unexpected 'end' in nested block found in line %s in %s", lineCount+1, filename));
 		}
 		
 		int nestedIndex = getIndex(nestedVer);
 		int parentIndex = getIndex(parentVer);
 		
-		if(nestedIndex>parentIndex && !inverted && !nestedVer.equals("def")) {
-			throw new Exception(String.format("The version in the nesting block is smaller than in the parent block. Nested: %s, Parent: %s, Line: %s, File: %s", nestedVer, parentVer, lineCount+1, filename));
+		if(nestedIndex>parentIndex && !inverted && nestedVer != VersionCatalog.DEF) {
+			throw new Exception(String.format("The version in the nesting block is smaller than in the parent block. Nested: %s, Parent: %s, Line: %s, File: %s", catalog.getName(nestedVer), catalog.getName(parentVer), lineCount+1, filename));
 		}
-		else if(nestedIndex<parentIndex && inverted && !nestedVer.equals("def")) {
-			throw new Exception(String.format("The version in the nesting block is greater than in the parent block. Nested: %s, Parent: %s, Line: %s, File: %s", nestedVer, parentVer, lineCount+1, filename));
+		else if(nestedIndex<parentIndex && inverted && nestedVer != VersionCatalog.DEF) {
+			throw new Exception(String.format("The version in the nesting block is greater than in the parent block. Nested: %s, Parent: %s, Line: %s, File: %s", catalog.getName(nestedVer), catalog.getName(parentVer), lineCount+1, filename));
 		}
 	}
 	
@@ -860,151 +1406,63 @@ public class Processor {
 	* Everything related to patterns can be found here.
 	*/
 	
-	private String preprocessPattern(String line, String targetVersion) {
+	/**
+	 * Applies the patterns of the pattern annotation to the line
+	 * @param line The line to change
+	 * @param patternNames The unsplit pattern names from the pattern annotation of the line
+	 * @param targetIndex The index of the version for which the patterns should be applied
+	 * @param context The context of the file, for errors during preprocessing
+	 * @return The new line
+	 */
+	private String preprocessPattern(String line, String patternNames, int targetIndex, Context context) {
+		String filename = context.filename;
 		
-		Matcher match = this.regexPatterns.matcher(line);
-		if (!match.find()) {
-			return line;
-		}
-
 		// find pattern
-		String patternNames = match.group(1);
-		List<Map<String, String>> patterns = getPatterns(patternNames);
+		List<String> names = getPatternNames(patternNames, context);
+		
+		// find every value of every pattern in one go
+		PatternMatcher.Matches matches = patternMatcher.match(line);
 
-		for (Map<String, String> pattern : patterns) { // Iterate through multiple patterns
-			String replacement = findReplacement(pattern, targetVersion);
-			if (replacement == null) {
-				throw new RuntimeException(String.format("The specified pattern %s in %s in line %s was not found for target version %s", patternNames, filename, linenumber, targetVersion));
-			}
+		for (String name : names) { // Iterate through multiple patterns
+			String replacement = patternTable.getReplacement(name, targetIndex);	// Every pattern was already resolved for every target in the constructor
 
-			if (line.contains(replacement)) { // Optimization, if the targetversion is already the correct
-				return line;
+			if (replacement.isEmpty() || matches.contains(replacement)) { // Optimization, if the targetversion is already the correct. The following patterns are still applied
+				continue;
 			}
 
-			String replaceable = null;
-
-			for (Entry<String, String> entry : pattern.entrySet()) {
-				if (line.contains(entry.getValue())) {
-					replaceable = entry.getValue();
-					break;
-				}
-			}
+			String replaceable = matches.findFirst(name);
 
 			if (replaceable == null)
-				throw new RuntimeException(String.format("The specified pattern %s in %s in line %s was not found for any version", patternNames, filename, line));
+				throw new RuntimeException(String.format("The specified pattern %s in %s in line %s was not found for any version", patternNames, filename, context.linenumber));
 
-			line = line.replace(replaceable, replacement);
+			matches.replace(replaceable, replacement);
 		}
 
-		return line;
+		return matches.rewrite(line);	// Apply all patterns at once
 	}
 	
 	/**
-	 * Split the pattern names and get the patterns
+	 * Split the pattern names and filter out the names of patterns that don't exist
 	 * @param patternnames Names to split
-	 * @return A list of mapped patterns
+	 * @param context The context of the file, for errors during preprocessing
+	 * @return A list of existing pattern names
 	 */
-	private List<Map<String, String>> getPatterns(String patternnames){
+	private List<String> getPatternNames(String patternnames, Context context){
 		
-		List<Map<String, String>> out = new ArrayList<>();
+		List<String> out = new ArrayList<>();
 		
 		String[] split = patternnames.split(","); 			// Split the names
 
 		for(String names : split) {
 			names = names.trim();	// trim any spaces
 			
-			Map<String, String> pattern = this.patterns.get(names);
-			if (pattern == null) {
-				System.out.println(String.format("The specified pattern %s in %s in line %s was not found", names, filename, linenumber));
+			if (!patternTable.contains(names)) {
+				System.out.println(String.format("The specified pattern %s in %s in line %s was not found", names, context.filename, context.linenumber));
 				continue;
 			}
-			out.add(pattern);
+			out.add(names);
 		}
 		return out;
 	}
-
-	/**
-	 * Searches through the patterns to find the replacement text for any given target version.
-	 * 
-	 * If the version is not in the patterns, it finds the next lowest (highest if {@link #inverted} is true) version.
-	 * 
-	 * If the version is too low it uses the replacement defined in the "def" block.
-	 * 
-	 * If no version and no def block was found it returns null.
-	 * 
-	 * @param pattern The pattern to search through
-	 * @param targetVersion The version we want the replacement for
-	 * @return The string that should replace the pattern in the line. Null if no pattern was found.
-	 */
-	private String findReplacement(Map<String, String> pattern, String targetVersion) {
-		
-		String replacement = pattern.get(targetVersion);
-		
-		if(replacement!=null) { // Optimization if the target version has a matching pattern
-			return replacement;
-		}
-		
-		int targetIndex = this.versions.indexOf(targetVersion); // Get the targetIndex
-		
-		if(!inverted) {
-			replacement = searchPatterns(targetIndex, pattern);
-		} else {
-			replacement = searchPatternsInverted(targetIndex, pattern);
-		}
-		
-		if(replacement==null) {	// If there was no version found
-			if(pattern.containsKey("def")) {	// Use default as replacement
-				replacement = pattern.get("def");
-			}
-		}
-		
-		return replacement;
-	}
-	
-	/**
-	 * Search through versions lower than the targetVersion for a fitting version.
-	 * 
-	 * The higher the index, the lower the version. 
-	 * This loop starts at the lowest version and goes higher up to one below the target version
-	 * 
-	 * @param targetIndex The index we want to stop on
-	 * @param pattern The pattern to search through
-	 * @return The string that should replace the pattern in the line
-	 */
-	private String searchPatterns(int targetIndex, Map<String, String> pattern) {
-		String replacement = null;
-
-		for (int currentIndex = versions.size()-1; currentIndex > targetIndex; currentIndex--) {
-			String currentVersion = versions.get(currentIndex);
-			
-			if(pattern.containsKey(currentVersion)) {
-				replacement=pattern.get(currentVersion);
-			}
-		}
-		return replacement;
-	}
-	
-	/**
-	 * Search through versions higher than the targetVersion for a fitting version.
-	 * 
-	 * The higher the index, the lower the version. 
-	 * This loop starts at the highest version and goes lower up to one above the target version
-	 * 
-	 * @param targetIndex The index we want to stop on
-	 * @param pattern The pattern to search through
-	 * @return The string that should replace the pattern in the line
-	 */
-	private String searchPatternsInverted(int targetIndex, Map<String, String> pattern) {
-		String replacement = null;
-
-		for (int currentIndex = 0; currentIndex < targetIndex; currentIndex++) {
-			String currentVersion = versions.get(currentIndex);
-			
-			if(pattern.containsKey(currentVersion)) {
-				replacement=pattern.get(currentVersion);
-			}
-		}
-		return replacement;
-	}
 	
 }
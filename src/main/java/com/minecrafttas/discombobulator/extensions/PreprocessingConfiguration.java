@@ -53,4 +53,70 @@ public abstract class PreprocessingConfiguration {
 	 * @return The port number
 	 */
 	public abstract Property<Integer> getPort();
+	
+	/**
+	 * The number of threads used to preprocess files in parallel. Defaults to the number of available processors, 1 preprocesses one file after another
+	 * @return The number of threads
+	 */
+	public abstract Property<Integer> getThreads();
+	
+	/**
+	 * The characters that start a comment by file ending, for files where the comment is not //.
+	 * Version statements and disabled lines in these files use the comment characters instead of //
+	 * <pre>
+	 * commentSyntax = [
+	 * 	"properties": "#",
+	 * 	"toml": "#",
+	 * 	"mcmeta": "//"
+	 * ]
+	 * </pre>
+	 * <pre>
+	 * ## 1.16.1
+	 * #$$key=value for 1.16.1
+	 * ## 1.14.4
+	 * key=value for 1.14.4
+	 * ## end
+	 * </pre>
+	 * Access wideners use # without configuring it
+	 * @return Map of comment characters by file ending
+	 */
+	public abstract MapProperty<String, String> getCommentSyntax();
+	
+	/**
+	 * Glob patterns of files that are copied to every version as they are, without looking for version statements.
+	 * Globs with a / are matched against the path relative to the source folder, the others against the filename.
+	 * Images, sounds and other binary files are always copied
+	 * <pre>
+	 * passthrough = [
+	 * 	"*.txt",
+	 * 	"main/resources/assets/**"
+	 * ]
+	 * </pre>
+	 * @return List of globs
+	 */
+	public abstract ListProperty<String> getPassthrough();
+	
+	/**
+	 * When preprocessed files are forced to the disk. Defaults to "none"
+	 * <ul>
+	 * <li>"none": The operating system writes the files whenever it wants</li>
+	 * <li>"group": All outputs of a file are forced to the disk together</li>
+	 * <li>"always": Every output is forced to the disk on its own</li>
+	 * </ul>
+	 * @return The fsync policy
+	 */
+	public abstract Property<String> getFsync();
+	
+	/**
+	 * How long watch mode waits after the last event of a file before preprocessing it, in milliseconds. Defaults to 50.
+	 * Saving a file often causes several events, they are preprocessed once after they stopped
+	 * @return The quiet period in milliseconds
+	 */
+	public abstract Property<Integer> getWatchQuietPeriod();
+	
+	/**
+	 * The longest time watch mode waits after the first event of a file before preprocessing it, even if the events didn't stop, in milliseconds. Defaults to 500
+	 * @return The maximum delay in milliseconds
+	 */
+	public abstract Property<Integer> getWatchMaxDelay();
 }
@@ -0,0 +1,77 @@
+package com.minecrafttas.discombobulator.processor;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * <p>Maps file endings to the characters that start a comment in that kind of file.
+ *
+ * <p>Version statements and disabled lines use these characters, e.g. <code>## 1.14.4</code> and <code>#$$</code> in an access widener instead of <code>//## 1.14.4</code> and <code>//$$</code>.
+ * Files with endings that are not registered use <code>//</code>.
+ *
+ * <p>Every comment syntax is compiled into a {@link LineLexer} once, when the registry is created. Endings with the same syntax share the lexer.
+ * Looking up the lexer once per file is all that is left, the lines themselves don't care about the file ending.
+ */
+public class CommentRegistry {
+
+	/**
+	 * The comment syntax of files with endings that are not registered
+	 */
+	public static final String DEFAULT = "//";
+
+	/**
+	 * The comment syntaxes that are registered without configuring anything
+	 */
+	private static final Map<String, String> builtIn = Map.of("accesswidener", "#");
+
+	private final LineLexer defaultLexer = new LineLexer(DEFAULT);
+
+	/**
+	 * The lexers by file ending
+	 */
+	private final Map<String, LineLexer> lexers = new HashMap<>();
+
+	/**
+	 * Creates a registry with the built-in comment syntaxes
+	 */
+	public CommentRegistry() {
+		this(null);
+	}
+
+	/**
+	 * Creates a registry with the built-in comment syntaxes and the configured ones, the configured ones take priority
+	 * @param syntaxes The comment characters by file ending, with or without a leading dot, e.g. <code>properties: "#"</code>
+	 */
+	public CommentRegistry(Map<String, String> syntaxes) {
+		Map<String, String> merged = new LinkedHashMap<>(builtIn);
+		if (syntaxes != null) {
+			for (Entry<String, String> syntax : syntaxes.entrySet()) {
+				String ending = syntax.getKey().startsWith(".") ? syntax.getKey().substring(1) : syntax.getKey();
+				merged.put(ending, syntax.getValue());
+			}
+		}
+
+		Map<String, LineLexer> bySyntax = new HashMap<>();
+		bySyntax.put(DEFAULT, defaultLexer);
+		for (Entry<String, String> syntax : merged.entrySet()) {
+			String commentChars = syntax.getValue();
+			if (commentChars == null || commentChars.isBlank())
+				throw new IllegalArgumentException(String.format("The comment syntax for %s can't be empty", syntax.getKey()));
+			if (!commentChars.strip().equals(commentChars))
+				throw new IllegalArgumentException(String.format("The comment syntax %s for %s can't start or end with whitespace", commentChars, syntax.getKey()));
+			lexers.put(syntax.getKey(), bySyntax.computeIfAbsent(commentChars, LineLexer::new));
+		}
+	}
+
+	/**
+	 * @param fileending The file ending without the dot, may be null
+	 * @return The lexer for the comment syntax of the file ending
+	 */
+	public LineLexer getLexer(String fileending) {
+		if (fileending == null)
+			return defaultLexer;
+		return lexers.getOrDefault(fileending, defaultLexer);
+	}
+}
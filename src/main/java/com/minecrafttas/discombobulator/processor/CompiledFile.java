@@ -0,0 +1,165 @@
+package com.minecrafttas.discombobulator.processor;
+
+/**
+ * <p>The compiled, immutable form of a file that was read by the {@linkplain com.minecrafttas.discombobulator.Processor}.
+ *
+ * <p>It contains every version statement of the file in order of appearence, e.g.
+ * <pre>
+ * //# 1.16.1	<- Statement 0, level 1, no parent
+ * //## 1.16.5	<- Statement 1, level 2, parent 0
+ * //## end	<- Statement 2, level 2, parent 0
+ * //# def	<- Statement 3, level 1, no parent
+ * //# end	<- Statement 4, level 1, no parent
+ * </pre>
+ * <p>It also contains whether the lines after each statement are enabled for every target version, as well as every pattern annotation. Since the compiled file does not change once created,
+ * rendering the file to a target version is a lookup in {@link #enabled} and the same compiled file can be cached and shared between threads.
+ */
+public final class CompiledFile {
+
+	/**
+	 * The number of lines in the file
+	 */
+	private final int lineCount;
+
+	/**
+	 * The 0 based line index of each statement
+	 */
+	private final int[] lines;
+
+	/**
+	 * The nesting level of each statement
+	 */
+	private final int[] levels;
+
+	/**
+	 * The resolved version index of each statement, with "def" and "end" already resolved to their version index
+	 */
+	private final int[] versionIndices;
+
+	/**
+	 * The statement index of the parent of each statement, -1 if the statement is in the first nesting level
+	 */
+	private final int[] parents;
+
+	/**
+	 * Whether the lines after a statement are enabled, indexed by target and then by statement
+	 */
+	private final boolean[][] enabled;
+
+	/**
+	 * The 0 based line index of each line with a pattern annotation
+	 */
+	private final int[] patternLines;
+
+	/**
+	 * The unsplit pattern names of each pattern annotation
+	 */
+	private final String[] patternNames;
+
+	/**
+	 * Creates a new compiled file. The arrays are not copied and must not be changed afterwards.
+	 * @param lineCount The number of lines in the file
+	 * @param lines The 0 based line index of each statement
+	 * @param levels The nesting level of each statement
+	 * @param versionIndices The resolved version index of each statement
+	 * @param parents The statement index of the parent of each statement
+	 * @param enabled Whether the lines after a statement are enabled, indexed by target and then by statement
+	 * @param patternLines The 0 based line index of each line with a pattern annotation
+	 * @param patternNames The unsplit pattern names of each pattern annotation
+	 */
+	public CompiledFile(int lineCount, int[] lines, int[] levels, int[] versionIndices, int[] parents, boolean[][] enabled, int[] patternLines, String[] patternNames) {
+		this.lineCount = lineCount;
+		this.lines = lines;
+		this.levels = levels;
+		this.versionIndices = versionIndices;
+		this.parents = parents;
+		this.enabled = enabled;
+		this.patternLines = patternLines;
+		this.patternNames = patternNames;
+	}
+
+	/**
+	 * @return The number of lines in the file
+	 */
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * @return The number of statements in the file
+	 */
+	public int size() {
+		return lines.length;
+	}
+
+	/**
+	 * @return True if the file does not contain any version statements
+	 */
+	public boolean isEmpty() {
+		return lines.length == 0;
+	}
+
+	/**
+	 * @param statement The statement index
+	 * @return The 0 based line index of the statement
+	 */
+	public int getLine(int statement) {
+		return lines[statement];
+	}
+
+	/**
+	 * @param statement The statement index
+	 * @return The nesting level of the statement
+	 */
+	public int getLevel(int statement) {
+		return levels[statement];
+	}
+
+	/**
+	 * @param statement The statement index
+	 * @return The resolved version index of the statement
+	 */
+	public int getVersionIndex(int statement) {
+		return versionIndices[statement];
+	}
+
+	/**
+	 * @param statement The statement index
+	 * @return The statement index of the parent, -1 if the statement is in the first nesting level
+	 */
+	public int getParent(int statement) {
+		return parents[statement];
+	}
+
+	/**
+	 * @param target The index of the target
+	 * @param statement The statement index
+	 * @return Whether the lines after the statement are enabled for the target
+	 */
+	public boolean isEnabled(int target, int statement) {
+		return enabled[target][statement];
+	}
+
+	/**
+	 * @return The number of pattern annotations in the file
+	 */
+	public int getPatternCount() {
+		return patternLines.length;
+	}
+
+	/**
+	 * @param pattern The index of the pattern annotation
+	 * @return The 0 based line index of the pattern annotation
+	 */
+	public int getPatternLine(int pattern) {
+		return patternLines[pattern];
+	}
+
+	/**
+	 * @param pattern The index of the pattern annotation
+	 * @return The unsplit pattern names of the pattern annotation, e.g. " GetWindow,GetMinecraft"
+	 */
+	public String getPatternNames(int pattern) {
+		return patternNames[pattern];
+	}
+}
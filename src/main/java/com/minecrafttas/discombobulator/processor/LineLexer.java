@@ -0,0 +1,280 @@
+package com.minecrafttas.discombobulator.processor;
+
+/**
+ * <p>Classifies lines into version statements, pattern annotations or plain code without using regex.
+ *
+ * <p>A version statement starts with optional whitespace, the comment characters, optional spaces, one or more hashtags for the nesting level, optional spaces and the version:
+ * <pre>
+ * 	// ## 1.16.5
+ * </pre>
+ * <p>A pattern annotation is the last comment in a line with an <code>@</code>, followed by the pattern names and a semicolon:
+ * <pre>
+ * Minecraft.getMinecraft().setWindow(mc.window); // @GetWindow,GetMinecraft;
+ * </pre>
+ *
+ * <p>Every character of a line is looked at a constant number of times, so a line is classified in linear time, even for very long lines where the regex would backtrack.
+ * Both cases match exactly what the previously used regexes <code>^\s*\/\/ *(#+) *(.+)</code> and <code>^.+\/\/ *@(.+);</code> found.
+ */
+public class LineLexer {
+
+	/**
+	 * The characters starting a comment, e.g. "//" or "#"
+	 */
+	private final String commentChars;
+
+	/**
+	 * The characters in front of a disabled line, e.g. "//$$"
+	 */
+	private final String disabledPrefix;
+
+	/**
+	 * Creates a new lexer
+	 * @param commentChars The characters starting a comment in version statements, e.g. "//" or "#"
+	 */
+	public LineLexer(String commentChars) {
+		if (commentChars == null || commentChars.isEmpty())
+			throw new IllegalArgumentException("Comment characters can't be empty");
+		this.commentChars = commentChars;
+		this.disabledPrefix = commentChars + "$$";
+	}
+
+	/**
+	 * @return The characters starting a comment, e.g. "//" or "#"
+	 */
+	public String getCommentChars() {
+		return commentChars;
+	}
+
+	/**
+	 * @return The characters in front of a disabled line, e.g. "//$$" or "#$$"
+	 */
+	public String getDisabledPrefix() {
+		return disabledPrefix;
+	}
+
+	/**
+	 * Classifies the line and stores the result in the token
+	 * @param line The line to classify
+	 * @param token The token to store the result in. Is reset before classifying
+	 * @return The token
+	 */
+	public Token lex(CharSequence line, Token token) {
+		token.reset();
+		int length = getLength(line);
+		lexStatement(line, length, token);
+		lexPattern(line, length, token);
+		return token;
+	}
+
+	/**
+	 * Checks for a version statement with the equivalent of <code>^\s*\/\/ *(#+) *(.+)</code>
+	 */
+	private void lexStatement(CharSequence line, int length, Token token) {
+		int i = 0;
+		while (i < length && isWhitespace(line.charAt(i)))
+			i++;
+
+		// Comment chars
+		if (!startsWith(line, length, i, commentChars))
+			return;
+		i += commentChars.length();
+
+		while (i < length && line.charAt(i) == ' ')
+			i++;
+
+		// Nesting level
+		int hashtagStart = i;
+		while (i < length && line.charAt(i) == '#')
+			i++;
+		int level = i - hashtagStart;
+		if (level == 0)
+			return;
+
+		int spaceStart = i;
+		while (i < length && line.charAt(i) == ' ')
+			i++;
+
+		// Version, which has to be at least one character long. If there is nothing left, the regex would backtrack into the spaces or the hashtags
+		if (i < length) {
+			token.setStatement(level, i, length);
+		} else if (i > spaceStart) {
+			token.setStatement(level, length - 1, length);
+		} else if (level > 1) {
+			token.setStatement(level - 1, length - 1, length);
+		}
+	}
+
+	/**
+	 * Checks for a pattern annotation with the equivalent of <code>^.+\/\/ *@(.+);</code>
+	 */
+	private void lexPattern(CharSequence line, int length, Token token) {
+		// The pattern names end at the last semicolon in the line
+		int semicolon = length - 1;
+		while (semicolon >= 0 && line.charAt(semicolon) != ';')
+			semicolon--;
+		if (semicolon < 0)
+			return;
+
+		// Search for the last comment before that semicolon, that still has at least one character in front of it
+		for (int i = semicolon - 1; i >= 1; i--) {
+			if (line.charAt(i) != '/' || line.charAt(i - 1) != '/')
+				continue;
+			int start = i - 1;
+			if (start < 1)
+				return;
+
+			int j = i + 1;
+			while (j < semicolon && line.charAt(j) == ' ')
+				j++;
+
+			if (j < semicolon - 1 && line.charAt(j) == '@') {	// There needs to be at least one character between the @ and the semicolon
+				token.setPattern(j + 1, semicolon);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * <p>Checks the encoded content of a file for anything that could be a version statement, a pattern annotation or a disabled line, without decoding it.
+	 *
+	 * <p>Looks for the comment characters followed by spaces and a <code>#</code> or <code>$</code>, and for <code>//</code> followed by spaces and an <code>@</code>.
+	 * This finds more than {@link #lex(CharSequence, Token)} would, but never less. The comment characters are ASCII and UTF-8 never uses ASCII bytes inside other characters, so the bytes can be searched directly.
+	 * @param bytes The UTF-8 encoded content of a file
+	 * @return False if the file is certainly left unchanged by the preprocessor
+	 */
+	public boolean containsMarkers(byte[] bytes) {
+		for (int i = 0; i < bytes.length; i++) {
+			if (startsWith(bytes, i, commentChars)) {
+				byte next = skipSpaces(bytes, i + commentChars.length());
+				if (next == '#' || next == '$')
+					return true;
+			}
+			if (startsWith(bytes, i, "//") && skipSpaces(bytes, i + 2) == '@')
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean startsWith(byte[] bytes, int offset, String prefix) {
+		if (offset + prefix.length() > bytes.length)
+			return false;
+		for (int i = 0; i < prefix.length(); i++) {
+			if (bytes[offset + i] != prefix.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return The first byte from the offset that is not a space or a tab, 0 if there is none
+	 */
+	private static byte skipSpaces(byte[] bytes, int offset) {
+		while (offset < bytes.length && (bytes[offset] == ' ' || bytes[offset] == '\t'))
+			offset++;
+		return offset < bytes.length ? bytes[offset] : 0;
+	}
+
+	/**
+	 * @return The length of the line up to the first line terminator
+	 */
+	private int getLength(CharSequence line) {
+		int length = line.length();
+		for (int i = 0; i < length; i++) {
+			if (isLineTerminator(line.charAt(i)))
+				return i;
+		}
+		return length;
+	}
+
+	private boolean startsWith(CharSequence line, int length, int offset, String prefix) {
+		if (offset + prefix.length() > length)
+			return false;
+		for (int i = 0; i < prefix.length(); i++) {
+			if (line.charAt(offset + i) != prefix.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return If the character is matched by \s in regex
+	 */
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+	}
+
+	/**
+	 * @return If the character is not matched by . in regex
+	 */
+	private static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+
+	/**
+	 * <p>The result of {@link LineLexer#lex(CharSequence, Token)}.
+	 *
+	 * <p>A line can be a version statement and have a pattern annotation at the same time. Only offsets are stored, so a token can be reused for every line without allocating anything.
+	 */
+	public static class Token {
+
+		private int level;
+		private int versionStart;
+		private int versionEnd;
+		private int patternStart;
+		private int patternEnd;
+
+		private void reset() {
+			level = 0;
+			versionStart = versionEnd = -1;
+			patternStart = patternEnd = -1;
+		}
+
+		private void setStatement(int level, int start, int end) {
+			this.level = level;
+			this.versionStart = start;
+			this.versionEnd = end;
+		}
+
+		private void setPattern(int start, int end) {
+			this.patternStart = start;
+			this.patternEnd = end;
+		}
+
+		/**
+		 * @return If the line is a version statement
+		 */
+		public boolean isStatement() {
+			return level > 0;
+		}
+
+		/**
+		 * @return The nesting level of the version statement, 0 if the line is not a version statement
+		 */
+		public int getLevel() {
+			return level;
+		}
+
+		/**
+		 * @param line The line that was classified
+		 * @return The version of the version statement, including "def" and "end", or null if the line is not a version statement
+		 */
+		public String getVersion(CharSequence line) {
+			return isStatement() ? line.subSequence(versionStart, versionEnd).toString() : null;
+		}
+
+		/**
+		 * @return If the line has a pattern annotation
+		 */
+		public boolean hasPatterns() {
+			return patternStart >= 0;
+		}
+
+		/**
+		 * @param line The line that was classified
+		 * @return The unsplit pattern names of the annotation, e.g. " GetWindow,GetMinecraft", or null if the line has no pattern annotation
+		 */
+		public String getPatterns(CharSequence line) {
+			return hasPatterns() ? line.subSequence(patternStart, patternEnd).toString() : null;
+		}
+	}
+}
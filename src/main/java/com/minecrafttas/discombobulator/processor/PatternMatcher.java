@@ -0,0 +1,368 @@
+package com.minecrafttas.discombobulator.processor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * <p>Finds the values of all patterns in a line in a single scan, using an Aho-Corasick automaton.
+ *
+ * <p>Every value of every pattern is added to one automaton when the processor is configured:
+ * <pre>
+ * GetLevel: [
+ * 	"1.14.4": "level",	<- value 0
+ * 	"def": "world"		<- value 1
+ * ],
+ * GetMinecraft: [
+ * 	"1.14.4": "Minecraft.getInstance()",	<- value 2
+ * 	"def": "Minecraft.getMinecraft()"	<- value 3
+ * ]
+ * </pre>
+ * <p>{@link #match(CharSequence)} then walks through the line once and reports every occurrence of every value, no matter how many patterns there are.
+ *
+ * <p>Values that are contained in other values (e.g. "world" and "worldRenderer") are ambiguous, since a line containing the longer value also contains the shorter one.
+ * The same goes for values that are used in multiple patterns.
+ * They are collected in {@link #getAmbiguities()} when the automaton is built.
+ */
+public class PatternMatcher {
+
+	/**
+	 * All distinct values, indexed by value id
+	 */
+	private final String[] values;
+
+	/**
+	 * The value ids of each pattern
+	 */
+	private final Map<String, int[]> patternValues = new LinkedHashMap<>();
+
+	/**
+	 * The value id of each value
+	 */
+	private final Map<String, Integer> valueIds = new LinkedHashMap<>();
+
+	/**
+	 * The sorted characters of the transitions of each node
+	 */
+	private final char[][] transitionChars;
+
+	/**
+	 * The target nodes of the transitions of each node, in the same order as {@link #transitionChars}
+	 */
+	private final int[][] transitionNodes;
+
+	/**
+	 * The node of the longest proper suffix of each node
+	 */
+	private final int[] fail;
+
+	/**
+	 * The value id ending in each node, -1 if no value ends in that node
+	 */
+	private final int[] output;
+
+	/**
+	 * The next node in the fail chain of each node, in which a value ends. 0 if there is none
+	 */
+	private final int[] dictionaryLink;
+
+	/**
+	 * Warnings about values that are contained in other values
+	 */
+	private final List<String> ambiguities = new ArrayList<>();
+
+	/**
+	 * Builds the automaton
+	 * @param patterns The patterns, by pattern name and then by version
+	 */
+	public PatternMatcher(Map<String, Map<String, String>> patterns) {
+		List<String> valueList = new ArrayList<>();
+		for (Entry<String, Map<String, String>> pattern : patterns.entrySet()) {
+			Set<Integer> ids = new LinkedHashSet<>();
+			for (String value : pattern.getValue().values()) {
+				if (value.isEmpty())	// An empty value is contained in every line and can't be searched for
+					continue;
+				Integer id = valueIds.get(value);
+				if (id == null) {
+					id = valueList.size();
+					valueIds.put(value, id);
+					valueList.add(value);
+				}
+				ids.add(id);
+			}
+			int[] idArray = new int[ids.size()];
+			int i = 0;
+			for (int id : ids) {
+				idArray[i++] = id;
+			}
+			patternValues.put(pattern.getKey(), idArray);
+		}
+		values = valueList.toArray(new String[0]);
+
+		/*Build the trie*/
+		List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+		List<Integer> outputList = new ArrayList<>();
+		trie.add(new TreeMap<>());
+		outputList.add(-1);
+		for (int id = 0; id < values.length; id++) {
+			int node = 0;
+			for (char c : values[id].toCharArray()) {
+				Integer next = trie.get(node).get(c);
+				if (next == null) {
+					next = trie.size();
+					trie.get(node).put(c, next);
+					trie.add(new TreeMap<>());
+					outputList.add(-1);
+				}
+				node = next;
+			}
+			outputList.set(node, id);
+		}
+
+		int size = trie.size();
+		transitionChars = new char[size][];
+		transitionNodes = new int[size][];
+		output = new int[size];
+		for (int node = 0; node < size; node++) {
+			TreeMap<Character, Integer> children = trie.get(node);
+			transitionChars[node] = new char[children.size()];
+			transitionNodes[node] = new int[children.size()];
+			int i = 0;
+			for (Entry<Character, Integer> child : children.entrySet()) {
+				transitionChars[node][i] = child.getKey();
+				transitionNodes[node][i] = child.getValue();
+				i++;
+			}
+			output[node] = outputList.get(node);
+		}
+
+		/*Build the fail and dictionary links breadth first*/
+		fail = new int[size];
+		dictionaryLink = new int[size];
+		ArrayDeque<Integer> queue = new ArrayDeque<>();
+		for (int child : transitionNodes[0]) {
+			queue.add(child);
+		}
+		while (!queue.isEmpty()) {
+			int node = queue.poll();
+			for (int i = 0; i < transitionChars[node].length; i++) {
+				char c = transitionChars[node][i];
+				int child = transitionNodes[node][i];
+
+				int state = fail[node];
+				int next;
+				while ((next = getTransition(state, c)) < 0 && state != 0) {
+					state = fail[state];
+				}
+				fail[child] = next < 0 ? 0 : next;
+				dictionaryLink[child] = output[fail[child]] >= 0 ? fail[child] : dictionaryLink[fail[child]];
+				queue.add(child);
+			}
+		}
+
+		/*Search for values that are used in multiple patterns or are contained in other values*/
+		Set<String> found = new LinkedHashSet<>();
+		for (int id = 0; id < values.length; id++) {
+			String names = getPatternNames(id);
+			if (names.contains(",")) {
+				found.add(String.format("The pattern value \"%s\" is used in multiple patterns (%s)", values[id], names));
+			}
+			Matches matches = match(values[id]);
+			for (int i = 0; i < matches.count; i++) {
+				int contained = matches.ids[i];
+				if (contained != id) {
+					found.add(String.format("The pattern value \"%s\" (%s) is contained in \"%s\" (%s)", values[contained], getPatternNames(contained), values[id], getPatternNames(id)));
+				}
+			}
+		}
+		ambiguities.addAll(found);
+	}
+
+	/**
+	 * @return Warnings about values that are contained in other values. Empty if there are no ambiguous values
+	 */
+	public List<String> getAmbiguities() {
+		return ambiguities;
+	}
+
+	/**
+	 * @param value The value to search for
+	 * @return The value id or -1 if no pattern contains the value
+	 */
+	public int getValueId(String value) {
+		Integer id = valueIds.get(value);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Finds every occurrence of every value in the line
+	 * @param line The line to search through
+	 * @return The occurrences
+	 */
+	public Matches match(CharSequence line) {
+		Matches matches = new Matches();
+		int node = 0;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			int next;
+			while ((next = getTransition(node, c)) < 0 && node != 0) {
+				node = fail[node];
+			}
+			node = next < 0 ? 0 : next;
+
+			for (int found = output[node] >= 0 ? node : dictionaryLink[node]; found != 0; found = dictionaryLink[found]) {
+				int id = output[found];
+				matches.add(i - values[id].length() + 1, id);
+			}
+		}
+		matches.sort();
+		return matches;
+	}
+
+	private int getTransition(int node, char c) {
+		int index = Arrays.binarySearch(transitionChars[node], c);
+		return index < 0 ? -1 : transitionNodes[node][index];
+	}
+
+	private String getPatternNames(int id) {
+		List<String> names = new ArrayList<>();
+		for (Entry<String, int[]> pattern : patternValues.entrySet()) {
+			for (int patternId : pattern.getValue()) {
+				if (patternId == id)
+					names.add(pattern.getKey());
+			}
+		}
+		return String.join(", ", names);
+	}
+
+	/**
+	 * <p>All occurrences of values in a line, sorted by their position.
+	 *
+	 * <p>Replacements are collected with {@link #replace(String, String)} and applied to the line at once with {@link #rewrite(String)}
+	 */
+	public class Matches {
+
+		private int count;
+		private int[] starts = new int[4];
+		private int[] ids = new int[4];
+
+		private int editCount;
+		private int[] editIds = new int[2];
+		private String[] editReplacements = new String[2];
+
+		private void add(int start, int id) {
+			if (count == starts.length) {
+				starts = Arrays.copyOf(starts, count * 2);
+				ids = Arrays.copyOf(ids, count * 2);
+			}
+			starts[count] = start;
+			ids[count] = id;
+			count++;
+		}
+
+		/**
+		 * Sorts the occurrences by position and then by length, longest first
+		 */
+		private void sort() {
+			for (int i = 1; i < count; i++) {	// Insertion sort, since the occurrences are mostly sorted already
+				int start = starts[i];
+				int id = ids[i];
+				int j = i - 1;
+				while (j >= 0 && (starts[j] > start || (starts[j] == start && values[ids[j]].length() < values[id].length()))) {
+					starts[j + 1] = starts[j];
+					ids[j + 1] = ids[j];
+					j--;
+				}
+				starts[j + 1] = start;
+				ids[j + 1] = id;
+			}
+		}
+
+		/**
+		 * @param value The value to search for
+		 * @return If the value occurs in the line
+		 */
+		public boolean contains(String value) {
+			int id = getValueId(value);
+			for (int i = 0; i < count; i++) {
+				if (ids[i] == id)
+					return true;
+			}
+			return false;
+		}
+
+		/**
+		 * @param patternName The name of the pattern
+		 * @return The first value of the pattern, in the order of the versions of the pattern, that occurs in the line. Null if no value occurs in the line
+		 */
+		public String findFirst(String patternName) {
+			int[] patternIds = patternValues.get(patternName);
+			if (patternIds == null)
+				return null;
+			for (int id : patternIds) {
+				for (int i = 0; i < count; i++) {
+					if (ids[i] == id)
+						return values[id];
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Marks every occurrence of the value to be replaced in {@link #rewrite(String)}
+		 * @param value The value to replace
+		 * @param replacement The replacement
+		 */
+		public void replace(String value, String replacement) {
+			if (editCount == editIds.length) {
+				editIds = Arrays.copyOf(editIds, editCount * 2);
+				editReplacements = Arrays.copyOf(editReplacements, editCount * 2);
+			}
+			editIds[editCount] = getValueId(value);
+			editReplacements[editCount] = replacement;
+			editCount++;
+		}
+
+		/**
+		 * Applies all replacements in one go. Like {@link String#replace(CharSequence, CharSequence)}, occurrences are replaced from left to right,
+		 * occurrences overlapping an already replaced occurrence are skipped.
+		 * @param line The line that was searched through
+		 * @return The line with all replacements applied
+		 */
+		public String rewrite(String line) {
+			if (editCount == 0)
+				return line;
+			StringBuilder builder = null;
+			int end = 0;
+			for (int i = 0; i < count; i++) {
+				if (starts[i] < end)
+					continue;
+				String replacement = getReplacement(ids[i]);
+				if (replacement == null)
+					continue;
+				if (builder == null)
+					builder = new StringBuilder(line.length() + 16);
+				builder.append(line, end, starts[i]).append(replacement);
+				end = starts[i] + values[ids[i]].length();
+			}
+			if (builder == null)
+				return line;
+			return builder.append(line, end, line.length()).toString();
+		}
+
+		private String getReplacement(int id) {
+			for (int i = 0; i < editCount; i++) {
+				if (editIds[i] == id)
+					return editReplacements[i];
+			}
+			return null;
+		}
+	}
+}
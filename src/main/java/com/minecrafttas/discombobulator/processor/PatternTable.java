@@ -0,0 +1,178 @@
+package com.minecrafttas.discombobulator.processor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * <p>The replacement of every pattern for every target version, resolved once when the {@linkplain com.minecrafttas.discombobulator.Processor} is created.
+ *
+ * <p>Each pattern gets one slot per version, in the order of the versions, and one slot for the base version at the end:
+ * <pre>
+ * versions = ["1.15.2", "1.14.4", "1.13.2"]
+ *
+ * GetLevel: [
+ * 	"1.14.4": "level",
+ * 	"def": "world"
+ * ]
+ *
+ * -> ["level", "level", "world", "level"]
+ * </pre>
+ * <p>If a pattern does not define a version, the next lowest (or highest if inverted) version is used, the "def" replacement if nothing was found.
+ * Since this is all done ahead of time, resolving the replacement of an annotated line is a single array lookup.
+ */
+public class PatternTable {
+
+	/**
+	 * The resolved replacements of each pattern, indexed by version index. The last slot is the base version
+	 */
+	private final Map<String, String[]> replacements = new LinkedHashMap<>();
+
+	/**
+	 * The versions in the order of the slots
+	 */
+	private final VersionCatalog catalog;
+
+	/**
+	 * If the list should be inverted with the first one being the default
+	 */
+	private final boolean inverted;
+
+	/**
+	 * Resolves every pattern for every version
+	 * @param catalog The versions of the project
+	 * @param patterns The patterns, by pattern name and then by version
+	 * @param inverted If the list of versions is inverted
+	 * @throws RuntimeException If a pattern uses a version that does not exist, or if a pattern has no replacement for a version
+	 */
+	public PatternTable(VersionCatalog catalog, Map<String, Map<String, String>> patterns, boolean inverted) {
+		this.catalog = catalog;
+		this.inverted = inverted;
+
+		for (Entry<String, Map<String, String>> pattern : patterns.entrySet()) {
+			String name = pattern.getKey();
+
+			for (String version : pattern.getValue().keySet()) {
+				if (!"def".equals(version) && !catalog.contains(version)) {
+					throw new RuntimeException(String.format("The version %s in pattern %s was not found", version, name));
+				}
+			}
+
+			String[] slots = new String[catalog.size() + 1];
+			for (int i = 0; i < slots.length; i++) {
+				String targetVersion = i < catalog.size() ? catalog.getName(i) : null;
+				String replacement = findReplacement(pattern.getValue(), targetVersion, i < catalog.size() ? i : -1);
+				if (replacement == null) {
+					throw new RuntimeException(String.format("The pattern %s has no replacement for %s. Add a \"def\" replacement to the pattern", name, targetVersion == null ? "the base version" : "version " + targetVersion));
+				}
+				slots[i] = replacement;
+			}
+			replacements.put(name, slots);
+		}
+	}
+
+	/**
+	 * @param name The name of the pattern
+	 * @return If the pattern exists
+	 */
+	public boolean contains(String name) {
+		return replacements.containsKey(name);
+	}
+
+	/**
+	 * @param name The name of the pattern
+	 * @param targetIndex The ordinal of the target version. The base version for a negative index or an index of {@link VersionCatalog#size()}
+	 * @return The replacement of the pattern for the target version or null if the pattern does not exist
+	 */
+	public String getReplacement(String name, int targetIndex) {
+		String[] slots = replacements.get(name);
+		if (slots == null)
+			return null;
+		if (targetIndex < 0)
+			targetIndex = catalog.size();
+		return slots[targetIndex];
+	}
+
+	/**
+	 * Searches through the patterns to find the replacement text for any given target version.
+	 *
+	 * If the version is not in the patterns, it finds the next lowest (highest if {@link #inverted} is true) version.
+	 *
+	 * If the version is too low it uses the replacement defined in the "def" block.
+	 *
+	 * If no version and no def block was found it returns null.
+	 *
+	 * @param pattern The pattern to search through
+	 * @param targetVersion The version we want the replacement for
+	 * @param targetIndex The ordinal of the target version, -1 for the base version
+	 * @return The string that should replace the pattern in the line. Null if no pattern was found.
+	 */
+	private String findReplacement(Map<String, String> pattern, String targetVersion, int targetIndex) {
+
+		String replacement = targetVersion == null ? null : pattern.get(targetVersion);	// Immutable maps don't allow searching for null
+
+		if(replacement!=null) { // Optimization if the target version has a matching pattern
+			return replacement;
+		}
+
+		if(!inverted) {
+			replacement = searchPatterns(targetIndex, pattern);
+		} else {
+			replacement = searchPatternsInverted(targetIndex, pattern);
+		}
+
+		if(replacement==null) {	// If there was no version found
+			if(pattern.containsKey("def")) {	// Use default as replacement
+				replacement = pattern.get("def");
+			}
+		}
+
+		return replacement;
+	}
+
+	/**
+	 * Search through versions lower than the targetVersion for a fitting version.
+	 *
+	 * The higher the index, the lower the version.
+	 * This loop starts at the lowest version and goes higher up to one below the target version
+	 *
+	 * @param targetIndex The index we want to stop on
+	 * @param pattern The pattern to search through
+	 * @return The string that should replace the pattern in the line
+	 */
+	private String searchPatterns(int targetIndex, Map<String, String> pattern) {
+		String replacement = null;
+
+		for (int currentIndex = catalog.size()-1; currentIndex > targetIndex; currentIndex--) {
+			String currentVersion = catalog.getName(currentIndex);
+
+			if(pattern.containsKey(currentVersion)) {
+				replacement=pattern.get(currentVersion);
+			}
+		}
+		return replacement;
+	}
+
+	/**
+	 * Search through versions higher than the targetVersion for a fitting version.
+	 *
+	 * The higher the index, the lower the version.
+	 * This loop starts at the highest version and goes lower up to one above the target version
+	 *
+	 * @param targetIndex The index we want to stop on
+	 * @param pattern The pattern to search through
+	 * @return The string that should replace the pattern in the line
+	 */
+	private String searchPatternsInverted(int targetIndex, Map<String, String> pattern) {
+		String replacement = null;
+
+		for (int currentIndex = 0; currentIndex < targetIndex; currentIndex++) {
+			String currentVersion = catalog.getName(currentIndex);
+
+			if(pattern.containsKey(currentVersion)) {
+				replacement=pattern.get(currentVersion);
+			}
+		}
+		return replacement;
+	}
+}
@@ -0,0 +1,172 @@
+package com.minecrafttas.discombobulator.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.minecrafttas.discombobulator.utils.Pair;
+
+/**
+ * <p>The versions of the project, each one interned with an ordinal matching its position in the build.gradle:
+ * <pre>
+ * versions = [
+ * 	"1.14.4: Forge",	<- ordinal 0, folder "Forge"
+ * 	"1.12.2",		<- ordinal 1, no folder
+ * 	"1.8.9"			<- ordinal 2, no folder
+ * ]
+ * </pre>
+ * <p>The catalog is the only way the {@linkplain com.minecrafttas.discombobulator.Processor} refers to versions.
+ * Looking up an ordinal is a single hash lookup, after that versions are compared as integers.
+ *
+ * <p>The keywords "def" and "end" are not versions, but get the special ordinals {@link #DEF} and {@link #END}, so statements can be stored as ordinals as well.
+ */
+public class VersionCatalog {
+
+	/**
+	 * The ordinal of strings that are not a version
+	 */
+	public static final int NOT_FOUND = -1;
+
+	/**
+	 * The ordinal of the "def" keyword
+	 */
+	public static final int DEF = -2;
+
+	/**
+	 * The ordinal of the "end" keyword
+	 */
+	public static final int END = -3;
+
+	/**
+	 * The syntax of a version in the build.gradle, e.g. "1.8.9: Folder"
+	 */
+	private static final Pattern versionSyntax = Pattern.compile("([\\w\\.]+)(:\\s*(.+))?");
+
+	/**
+	 * The versions, indexed by ordinal
+	 */
+	private final List<String> versions;
+
+	/**
+	 * The folders of each version, indexed by ordinal. Null entries if the version has no folder
+	 */
+	private final List<String> folders;
+
+	/**
+	 * The ordinal of each version
+	 */
+	private final Map<String, Integer> ordinals = new HashMap<>();
+
+	/**
+	 * Creates a catalog of versions without folders
+	 * @param versions The versions in order
+	 */
+	public VersionCatalog(List<String> versions) {
+		this(versions, Collections.nCopies(versions.size(), null));
+	}
+
+	/**
+	 * Creates a catalog of versions
+	 * @param versions The versions in order
+	 * @param folders The folder of each version, null if the version has no folder
+	 */
+	public VersionCatalog(List<String> versions, List<String> folders) {
+		if (versions.size() != folders.size())
+			throw new IllegalArgumentException("Every version needs a folder entry");
+		for (int i = 0; i < versions.size(); i++) {
+			String version = versions.get(i);
+			if (version == null)
+				throw new NullPointerException("Versions can't be null!");
+			if ("def".equals(version) || "end".equals(version))
+				throw new IllegalArgumentException(String.format("%s can't be used as a version", version));
+			if (ordinals.put(version, i) != null)
+				throw new IllegalArgumentException(String.format("The version %s was defined twice", version));
+		}
+		this.versions = Collections.unmodifiableList(new ArrayList<>(versions));
+		this.folders = Collections.unmodifiableList(new ArrayList<>(folders));
+	}
+
+	/**
+	 * Parses the versions from the build.gradle. Each entry is a version, optionally followed by a colon and the folder, e.g. "1.8.9: Folder"
+	 * @param entries The entries from the build.gradle
+	 * @return The catalog of the entries
+	 */
+	public static VersionCatalog parse(List<String> entries) {
+		List<String> versions = new ArrayList<>();
+		List<String> folders = new ArrayList<>();
+		for (String entry : entries) {
+			Matcher matcher = versionSyntax.matcher(entry);
+			if (matcher.find()) {
+				versions.add(matcher.group(1));
+				folders.add(matcher.group(3));
+			}
+		}
+		return new VersionCatalog(versions, folders);
+	}
+
+	/**
+	 * @param version The version, "def" or "end"
+	 * @return The ordinal of the version, {@link #DEF}, {@link #END}, or {@link #NOT_FOUND} if it is not a version
+	 */
+	public int getOrdinal(String version) {
+		if (version == null)
+			return NOT_FOUND;
+		Integer ordinal = ordinals.get(version);
+		if (ordinal != null)
+			return ordinal;
+		if ("def".equals(version))
+			return DEF;
+		if ("end".equals(version))
+			return END;
+		return NOT_FOUND;
+	}
+
+	/**
+	 * @param version The version to search for
+	 * @return If the version is in the catalog. False for "def" and "end"
+	 */
+	public boolean contains(String version) {
+		return version != null && ordinals.containsKey(version);
+	}
+
+	/**
+	 * @param ordinal The ordinal of the version, {@link #DEF} or {@link #END}
+	 * @return The version, "def" or "end"
+	 */
+	public String getName(int ordinal) {
+		if (ordinal == DEF)
+			return "def";
+		if (ordinal == END)
+			return "end";
+		return versions.get(ordinal);
+	}
+
+	/**
+	 * @return The number of versions
+	 */
+	public int size() {
+		return versions.size();
+	}
+
+	/**
+	 * @return The versions in order, indexed by ordinal
+	 */
+	public List<String> getVersions() {
+		return versions;
+	}
+
+	/**
+	 * @return The versions in order, with their folder on the right
+	 */
+	public List<Pair<String, String>> getVersionPairs() {
+		List<Pair<String, String>> out = new ArrayList<>();
+		for (int i = 0; i < versions.size(); i++) {
+			out.add(Pair.of(versions.get(i), folders.get(i)));
+		}
+		return out;
+	}
+}
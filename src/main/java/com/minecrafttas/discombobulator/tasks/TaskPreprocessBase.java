@@ -1,41 +1,321 @@
 package com.minecrafttas.discombobulator.tasks;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileType;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectories;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.ChangeType;
+import org.gradle.work.FileChange;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
 
 import com.minecrafttas.discombobulator.Discombobulator;
+import com.minecrafttas.discombobulator.utils.AtomicFileWriter;
 import com.minecrafttas.discombobulator.utils.BetterFileWalker;
+import com.minecrafttas.discombobulator.utils.FileClassifier;
+import com.minecrafttas.discombobulator.utils.FileManifest;
 import com.minecrafttas.discombobulator.utils.Pair;
+import com.minecrafttas.discombobulator.utils.ParallelFileProcessor;
 import com.minecrafttas.discombobulator.utils.SafeFileOperations;
 import com.minecrafttas.discombobulator.utils.SocketLock;
 
 /**
- * This task preprocesses the base source code into all versions.
+ * <p>This task preprocesses the base source code into all versions.
+ *
+ * <p>The base source folder is the input, the source folders of the versions are the outputs. If nothing changed, gradle marks the task as up-to-date and skips it.
+ * If only some base files changed, only those files are preprocessed again. Everything is preprocessed again if the versions, the patterns or the outputs changed.
+ *
+ * <p>On top of that, a {@link FileManifest} in build/discombobulator remembers the hashes of every base file and its outputs, so unchanged files are skipped even when gradle reruns the task.
  * @author Pancake
  */
 public class TaskPreprocessBase extends DefaultTask {
 
+	/**
+	 * The base source folder, "src" in the project folder by default
+	 */
+	private final DirectoryProperty baseSourceDir = getProject().getObjects().directoryProperty().convention(getProject().getLayout().getProjectDirectory().dir("src"));
+
 	@TaskAction
-	public void preprocessBase() {
+	public void preprocessBase(InputChanges changes) {
 		// Lock port
 		SocketLock lock = new SocketLock(Discombobulator.PORT_LOCK);
 		lock.tryLock();
-		
+
 		System.out.println(Discombobulator.getSplash());
 
 		// Prepare list of physical version folders
+		List<Pair<String, String>> versions = getVersionFolders();
+
+		File baseSourceDir = this.baseSourceDir.get().getAsFile();
+		if (!baseSourceDir.exists())
+			throw new RuntimeException("Base source folder not found");
+
+		FileManifest manifest = FileManifest.load(getManifestFile(), getFingerprint());
+
+		if (changes.isIncremental()) {
+			System.out.println("Preprocessing changed base source...");
+
+			List<Path> changedFiles = new ArrayList<>();
+			for (FileChange change : changes.getFileChanges(this.baseSourceDir)) {
+				if (change.getFileType() == FileType.DIRECTORY)
+					continue;
+
+				Path path = Path.of(change.getNormalizedPath());
+				if (change.getChangeType() == ChangeType.REMOVED) {
+					deleteOutputs(path, versions);
+					manifest.remove(FileManifest.toKey(path));
+				} else {
+					changedFiles.add(path);
+				}
+			}
+			preprocessFiles(baseSourceDir.toPath(), changedFiles, versions, manifest);
+		} else {
+			System.out.println("Preprocessing base source...");
+
+			List<Path> files = new ArrayList<>();
+			BetterFileWalker.walk(baseSourceDir.toPath(), files::add);
+			preprocessFiles(baseSourceDir.toPath(), files, versions, manifest);
+
+			if (manifest.isLoaded()) {
+				// Delete the outputs of every base file that was preprocessed in the last run, but doesn't exist anymore
+				Set<String> existing = new HashSet<>();
+				for (Path file : files) {
+					existing.add(FileManifest.toKey(file));
+				}
+				for (String stale : new ArrayList<>(manifest.getPaths())) {
+					if (!existing.contains(stale)) {
+						deleteOutputs(Path.of(stale), versions);
+						manifest.remove(stale);
+					}
+				}
+			} else {
+				// Without a manifest, delete all excess file in version folders
+				for (Pair<String, String> version : versions) {
+					Path subSourceDir = getVersionSourceDir(version.right());
+					BetterFileWalker.walk(subSourceDir, path -> {
+						// Verify if file exists in base source dir
+						Path originalFile = baseSourceDir.toPath().resolve(path);
+						if (!Files.exists(originalFile)) {
+							System.out.println("Deleting " + path.getFileName() + " in " + version.left());
+							SafeFileOperations.delete(subSourceDir.resolve(path).toFile());
+						}
+					});
+				}
+			}
+		}
+
+		try {
+			manifest.save();
+		} catch (IOException e) {
+			System.err.println(String.format("Could not save %s: %s", getManifestFile(), e.getMessage()));
+		}
+
+		// Unlock port
+		lock.unlock();
+	}
+
+	/**
+	 * Preprocesses the files into all versions. Files that are unchanged since the last run according to the manifest are skipped
+	 * @param baseSourceDir The base source folder
+	 * @param files The files to preprocess, relative to the base source folder
+	 * @param versions The versions with their folder
+	 * @param manifest The manifest of the last run, updated with every preprocessed file
+	 */
+	private void preprocessFiles(Path baseSourceDir, List<Path> files, List<Pair<String, String>> versions, FileManifest manifest) {
+		AtomicFileWriter.SyncPolicy policy = getFsync();
+		List<Pair<Path, Exception>> errors = ParallelFileProcessor.process(baseSourceDir, files, getThreads(), path -> {
+			Path inFile = baseSourceDir.resolve(path);
+			String key = FileManifest.toKey(path);
+			// Images, sounds and other binary files are copied without loading them into memory
+			boolean passthrough = Discombobulator.classifier.isPassthrough(path);
+			byte[] input = passthrough ? null : Files.readAllBytes(inFile);
+			String inputHash = passthrough ? FileManifest.hash(inFile) : FileManifest.hash(input);
+
+			FileManifest.FileEntry previous = manifest.get(key);
+			if (isUpToDate(previous, inputHash, path, versions)) {
+				return;
+			}
+			manifest.remove(key);	// If preprocessing fails, the file is preprocessed again in the next run
+
+			// Preprocess the file for all versions at once. Binary files and files without any statements, patterns or disabled lines are copied as they are
+			String filename = path.getFileName().toString();
+			String[] split = filename.split("\\.");
+			boolean verbatim = passthrough || !Discombobulator.processor.containsMarkers(input, split[split.length-1]) || FileClassifier.isBinary(input);
+
+			System.out.println((verbatim ? "Copying " : "Preprocessing ") + path.getFileName());
+
+			Map<String, String> hashes = new LinkedHashMap<>();
+			List<Path> changed = new ArrayList<>();
+			try (AtomicFileWriter writer = new AtomicFileWriter(policy)) {
+				if (verbatim) {
+					for (Pair<String, String> version : versions) {
+						Path outFile = getVersionSourceDir(version.right()).resolve(path);
+						hashes.put(version.left(), inputHash);
+						if (isUnchanged(previous, version.left(), inputHash, outFile))
+							continue;
+
+						// Write file, but only if the content changed
+						Files.createDirectories(outFile.getParent());
+						boolean equal = passthrough ? SafeFileOperations.contentEquals(outFile, inFile) : SafeFileOperations.contentEquals(outFile, input);
+						if (!equal) {
+							writer.copy(inFile, outFile);
+							changed.add(outFile);
+						}
+					}
+				} else {
+					// Stream the output of every version into its temporary file while the base file is read once
+					Map<String, AtomicFileWriter.PendingFile> pending = new LinkedHashMap<>();
+					Map<String, OutputStream> outputs = new LinkedHashMap<>();
+					for (Pair<String, String> version : versions) {
+						Path outFile = getVersionSourceDir(version.right()).resolve(path);
+						Files.createDirectories(outFile.getParent());
+						AtomicFileWriter.PendingFile file = writer.open(outFile);
+						pending.put(version.left(), file);
+						outputs.put(version.left(), file);
+					}
+					Discombobulator.processor.preprocessAll(Channels.newChannel(new ByteArrayInputStream(input)), outputs, filename, split[split.length-1], inputHash);
+					for (OutputStream out : outputs.values()) {
+						out.close();
+					}
+
+					// Only replace files whose content changed
+					for (Entry<String, AtomicFileWriter.PendingFile> entry : pending.entrySet()) {
+						AtomicFileWriter.PendingFile file = entry.getValue();
+						hashes.put(entry.getKey(), file.getHash());
+						if (isUnchanged(previous, entry.getKey(), file.getHash(), file.getPath()) || SafeFileOperations.contentEquals(file.getPath(), file.getTempFile()))
+							file.discard();
+						else
+							changed.add(file.getPath());
+					}
+				}
+				writer.commit();
+			}
+
+			// Update last modified date of the written files
+			for (Path outFile : changed) {
+				Files.setLastModifiedTime(outFile, Files.getLastModifiedTime(inFile));
+			}
+
+			Map<String, FileManifest.Output> written = new LinkedHashMap<>();
+			for (Pair<String, String> version : versions) {
+				Path outFile = getVersionSourceDir(version.right()).resolve(path);
+				written.put(version.left(), FileManifest.Output.of(outFile, hashes.get(version.left())));
+			}
+			manifest.put(key, new FileManifest.FileEntry(inputHash, written));
+		});
+
+		// Report the errors sorted by file, so they are in the same order every run
+		IOException ioException = null;
+		for (Pair<Path, Exception> error : errors) {
+			if (error.right() instanceof IOException) {
+				error.right().printStackTrace();
+				if (ioException == null)
+					ioException = (IOException) error.right();
+			} else {
+				System.err.println(error.right().getMessage());
+			}
+		}
+		if (ioException != null)
+			throw new RuntimeException("Could not write to filesystem.", ioException);
+	}
+
+	/**
+	 * Compares the hash of an output to the last run, before reading the file
+	 * @param previous The entry of the base file from the last run, may be null
+	 * @param version The version of the output
+	 * @param outputHash The hash of the new output
+	 * @param outFile The output file
+	 * @return If the output file still has the content from the last run, which is the same as the new output
+	 */
+	private boolean isUnchanged(FileManifest.FileEntry previous, String version, String outputHash, Path outFile) {
+		FileManifest.Output previousOutput = previous == null ? null : previous.getOutput(version);
+		return previousOutput != null && previousOutput.getHash().equals(outputHash) && previousOutput.isUnchanged(outFile);
+	}
+
+	/**
+	 * @param entry The entry of the file in the manifest, null if there is none
+	 * @param inputHash The hash of the base file
+	 * @param path The path of the base file relative to the base source folder
+	 * @param versions The versions with their folder
+	 * @return If the base file is the same as in the last run and none of its outputs were changed since
+	 */
+	private boolean isUpToDate(FileManifest.FileEntry entry, String inputHash, Path path, List<Pair<String, String>> versions) {
+		if (entry == null || !entry.getInputHash().equals(inputHash))
+			return false;
+		for (Pair<String, String> version : versions) {
+			FileManifest.Output output = entry.getOutput(version.left());
+			if (output == null || !output.isUnchanged(getVersionSourceDir(version.right()).resolve(path)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Deletes the outputs of a base file in all version folders
+	 * @param path The path of the base file relative to the base source folder
+	 * @param versions The versions with their folder
+	 */
+	private void deleteOutputs(Path path, List<Pair<String, String>> versions) {
+		for (Pair<String, String> version : versions) {
+			Path outFile = getVersionSourceDir(version.right()).resolve(path);
+			if (Files.exists(outFile)) {
+				System.out.println("Deleting " + path.getFileName() + " in " + version.left());
+				SafeFileOperations.delete(outFile.toFile());
+			}
+		}
+	}
+
+	/**
+	 * @return The manifest of the last run in the build folder
+	 */
+	private Path getManifestFile() {
+		return getProject().getLayout().getBuildDirectory().file("discombobulator/manifest.txt").get().getAsFile().toPath();
+	}
+
+	/**
+	 * @return A hash of everything that changes the outcome of preprocessing apart from the files themselves
+	 */
+	private String getFingerprint() {
+		Map<String, Map<String, String>> patterns = new TreeMap<>();
+		for (Map.Entry<String, Map<String, String>> pattern : getPatterns().entrySet()) {
+			patterns.put(pattern.getKey(), new TreeMap<>(pattern.getValue()));
+		}
+		String fingerprint = String.join("\n", Discombobulator.getDiscoVersion(), getVersions().toString(), patterns.toString(), Boolean.toString(isInverted()), new TreeMap<>(getCommentSyntax()).toString(), getPassthrough().toString(), System.lineSeparator());
+		return FileManifest.hash(fingerprint.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return The versions that have a build.gradle in their folder. Left is the version, right is the folder
+	 */
+	private List<Pair<String, String>> getVersionFolders() {
 		List<Pair<String, String>> versionsConfig = Discombobulator.getVersionPairs();
-		
+
 		List<Pair<String, String>> versions = new ArrayList<>();
-		
+
 		for (Pair<String, String> versionConf : versionsConfig) {
 			String path = versionConf.right();
 			if(path == null) {
@@ -45,56 +325,90 @@ public class TaskPreprocessBase extends DefaultTask {
 				versions.add(Pair.of(versionConf.left(), path));
 			}
 		}
-		
-		System.out.println("Preprocessing base source...");
+		return versions;
+	}
 
-		File baseSourceDir = new File(this.getProject().getProjectDir(), "src");
-		if (!baseSourceDir.exists())
-			throw new RuntimeException("Base source folder not found");
+	private Path getVersionSourceDir(String folder) {
+		return new File(getProject().getProjectDir(), folder + File.separatorChar + "src").toPath();
+	}
 
-		BetterFileWalker.walk(baseSourceDir.toPath(), path -> {
-			System.out.println("Preprocessing " + path.getFileName());
-			try {
-				for (Pair<String, String> version : versions) {
-					// Find input and output file
-					Path inFile = baseSourceDir.toPath().resolve(path);
-					Path outFile = new File(baseSourceDir.getParent(), version.right() + File.separatorChar + "src").toPath().resolve(path);
-
-//					System.out.println(inFile);
-//					System.out.println(outFile+"\n");
-					
-					// Preprocess file
-					String[] split = path.getFileName().toString().split("\\.");
-					List<String> lines = Discombobulator.processor.preprocess(version.left(), Files.readAllLines(inFile), version.left(), split[split.length-1]);
-
-					// Write file and update last modified date
-					Files.createDirectories(outFile.getParent());
-					SafeFileOperations.write(outFile, lines, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
-					Files.setLastModifiedTime(outFile, Files.getLastModifiedTime(inFile));
-				}
-			} catch (IOException e) {
-				e.printStackTrace();
-				throw new RuntimeException("Could not write to filesystem.", e);
-			} catch (Exception e) {
-				System.err.println(e.getMessage());
-				return;
-			}
-		});
+	//====================================== Inputs and outputs
 
-		// Delete all excess file in version folders
-		for (Pair<String, String> version : versions) {
-			Path subSourceDir = new File(baseSourceDir.getParent(), version.right() + File.separatorChar + "src").toPath();
-			BetterFileWalker.walk(subSourceDir, path -> {
-				// Verify if file exists in base source dir
-				Path originalFile = baseSourceDir.toPath().resolve(path);
-				if (!Files.exists(originalFile)) {
-					System.out.println("Deleting " + path.getFileName() + " in " + version.left());
-					SafeFileOperations.delete(subSourceDir.resolve(path).toFile());
-				}
-			});
-		}
+	/**
+	 * @return The base source folder. Changes in this folder are preprocessed incrementally
+	 */
+	@Incremental
+	@PathSensitive(PathSensitivity.RELATIVE)
+	@InputDirectory
+	public DirectoryProperty getBaseSourceDir() {
+		return baseSourceDir;
+	}
 
-		// Unlock port
-		lock.unlock();
+	/**
+	 * @return The versions from the build.gradle. Changing them preprocesses everything again
+	 */
+	@Input
+	public List<String> getVersions() {
+		return Discombobulator.config.getVersions().get();
+	}
+
+	/**
+	 * @return The patterns from the build.gradle. Changing them preprocesses everything again
+	 */
+	@Input
+	public Map<String, Map<String, String>> getPatterns() {
+		return Discombobulator.config.getPatterns().get();
+	}
+
+	/**
+	 * @return If the versions are inverted. Changing it preprocesses everything again
+	 */
+	@Input
+	public boolean isInverted() {
+		return Discombobulator.config.getInverted().getOrElse(false);
+	}
+
+	/**
+	 * @return The comment characters by file ending. Changing them preprocesses everything again
+	 */
+	@Input
+	public Map<String, String> getCommentSyntax() {
+		return Discombobulator.config.getCommentSyntax().getOrElse(new HashMap<>());
+	}
+
+	/**
+	 * @return The globs of files that are copied as they are. Changing them preprocesses everything again
+	 */
+	@Input
+	public List<String> getPassthrough() {
+		return Discombobulator.config.getPassthrough().getOrElse(new ArrayList<>());
+	}
+
+	/**
+	 * @return The number of threads used for preprocessing. Doesn't change the outcome, so it is not an input
+	 */
+	@Internal
+	public int getThreads() {
+		return Discombobulator.config.getThreads().getOrElse(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @return When preprocessed files are forced to the disk. Doesn't change the outcome, so it is not an input
+	 */
+	@Internal
+	public AtomicFileWriter.SyncPolicy getFsync() {
+		return AtomicFileWriter.SyncPolicy.of(Discombobulator.config.getFsync().getOrNull());
+	}
+
+	/**
+	 * @return The source folders of all versions by version
+	 */
+	@OutputDirectories
+	public Map<String, File> getVersionSourceDirs() {
+		Map<String, File> out = new LinkedHashMap<>();
+		for (Pair<String, String> version : getVersionFolders()) {
+			out.put(version.left(), getVersionSourceDir(version.right()).toFile());
+		}
+		return out;
 	}
 }
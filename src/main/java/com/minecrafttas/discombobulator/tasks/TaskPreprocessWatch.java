@@ -1,20 +1,30 @@
 package com.minecrafttas.discombobulator.tasks;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
 import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Scanner;
 
 import org.gradle.api.DefaultTask;
 import org.gradle.api.tasks.TaskAction;
 
 import com.minecrafttas.discombobulator.Discombobulator;
-import com.minecrafttas.discombobulator.PathLock;
+import com.minecrafttas.discombobulator.EchoFilter;
+import com.minecrafttas.discombobulator.utils.AtomicFileWriter;
+import com.minecrafttas.discombobulator.utils.FileClassifier;
+import com.minecrafttas.discombobulator.utils.FileManifest;
+import com.minecrafttas.discombobulator.utils.FileWatchService;
 import com.minecrafttas.discombobulator.utils.FileWatcher;
 import com.minecrafttas.discombobulator.utils.Pair;
 import com.minecrafttas.discombobulator.utils.SafeFileOperations;
@@ -28,11 +38,11 @@ import com.minecrafttas.discombobulator.utils.Triple;
  */
 public class TaskPreprocessWatch extends DefaultTask {
 
-	private List<FileWatcherThread> threads = new ArrayList<>();
+	private FileWatcherThread thread;
 	
-	private Triple<List<String>, Path, Path> currentFileUpdater = null;
+	private volatile Triple<byte[], Path, Path> currentFileUpdater = null;
 	
-	private boolean msgSeen = false;
+	private volatile boolean msgSeen = false;
 
 	@TaskAction
 	public void preprocessWatch() {
@@ -59,8 +69,22 @@ public class TaskPreprocessWatch extends DefaultTask {
 			}
 		}
 
+		// Watch all versions with one watch service
+		int parallelism = Discombobulator.config.getThreads().getOrElse(Runtime.getRuntime().availableProcessors());
+		FileWatchService service;
+		try {
+			long quietPeriod = Discombobulator.config.getWatchQuietPeriod().getOrElse(FileWatchService.DEFAULT_QUIET_PERIOD);
+			long maxDelay = Discombobulator.config.getWatchMaxDelay().getOrElse(FileWatchService.DEFAULT_MAX_DELAY);
+			service = new FileWatchService(quietPeriod, maxDelay, parallelism);	// Different files are preprocessed in parallel
+		} catch (IOException e) {
+			e.printStackTrace();
+			lock.unlock();
+			return;
+		}
 		for (Pair<String, Path> version : versions)
-			this.watch(version.right(), versions);
+			this.watch(service, version.right(), versions, parallelism);
+		service.reportWatchLimit();
+		thread = new FileWatcherThread(service);
 
 		// Wait for user input and cancel the task
 		
@@ -76,12 +100,17 @@ public class TaskPreprocessWatch extends DefaultTask {
 					}
 					Path outFile = currentFileUpdater.right();
 					Path inFile = currentFileUpdater.middle();
-					List<String> outLines = currentFileUpdater.left();
+					byte[] bytes = currentFileUpdater.left();
 					
-					Discombobulator.pathLock.scheduleAndLock(outFile);
-					Files.createDirectories(outFile.getParent());
-					SafeFileOperations.write(outFile, outLines, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
-					Files.setLastModifiedTime(outFile, Files.getLastModifiedTime(inFile));
+					if (!SafeFileOperations.contentEquals(outFile, bytes)) {
+						Discombobulator.echoFilter.expect(outFile, FileManifest.hash(bytes));
+						Files.createDirectories(outFile.getParent());
+						try (AtomicFileWriter writer = new AtomicFileWriter(getFsync())) {
+							writer.write(outFile, bytes);
+							writer.commit();
+						}
+						Files.setLastModifiedTime(outFile, Files.getLastModifiedTime(inFile));
+					}
 					currentFileUpdater = null;
 					
 					System.out.println(String.format("Processed the recently edited file %s\n", outFile.getFileName()));
@@ -90,26 +119,26 @@ public class TaskPreprocessWatch extends DefaultTask {
 		} catch (IOException e1) {
 		}
 		sc.close();
-		for (FileWatcherThread thread : this.threads)
-			thread.close();
+		thread.close();
 		lock.unlock();
 	}
 
 	/**
 	 * Watches and preproceses a source folder
 	 * 
+	 * @param service  The watch service of all source folders
 	 * @param file     Source folder
 	 * @param versions Map of versions
+	 * @param parallelism The number of threads to register the folders with
 	 */
-	private void watch(Path file, List<Pair<String, Path>> versions) {
+	private void watch(FileWatchService service, Path file, List<Pair<String, Path>> versions, int parallelism) {
 		String version = file.getParent().getFileName().toString();
-		FileWatcher watcher = null;
 		try {
-			watcher = constructFileWatcher(file, versions, version);
+			service.register(constructFileWatcher(file, versions, version), parallelism);
+			System.out.println("Started watching "+version);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-		threads.add(new FileWatcherThread(watcher, version));
 	}
 
 	private FileWatcher constructFileWatcher(Path file, List<Pair<String, Path>> versions, String version) throws IOException {
@@ -125,46 +154,84 @@ public class TaskPreprocessWatch extends DefaultTask {
 				// Get the filename that is getting prerprocessed
 				String filename = path.getFileName().toString();
 
-				PathLock schedule = Discombobulator.pathLock;
-				if (schedule.isLocked(path))
-					return;
-
 				// Get path relative to the root dir
 				Path relativeFile = file.relativize(path);
 				try {
 					// Modify this file in other versions too
 
-					// Read the original file
-					List<String> inLines = Files.readAllLines(path);
+					// Read the original file and preprocess it for all versions at once. Binary files and files without any statements, patterns or disabled lines are copied as they are
+					byte[] input = Files.readAllBytes(path);
+					EchoFilter echoFilter = Discombobulator.echoFilter;
+					if (echoFilter.isEcho(path, input))	// Written by the preprocessor
+						return;
+					String[] split = filename.split("\\.");
+					boolean verbatim = Discombobulator.classifier.isPassthrough(relativeFile) || !Discombobulator.processor.containsMarkers(input, split[split.length-1]) || FileClassifier.isBinary(input);
 
-					// Iterate through all versions
+					// The outputs of every other version and the base project, the base project under the key null
+					Map<String, Path> outFiles = new LinkedHashMap<>();
+					String ownVersion = null;
+					Path ownFile = null;
 					for (Pair<String, Path> subVersion : versions) {
-						// If the version equals the original version, then skip it
-
-						// Preprocess the lines
-						String[] split = path.getFileName().toString().split("\\.");
-						List<String> outLines = Discombobulator.processor.preprocess(subVersion.left(), inLines, filename, split[split.length-1]);
-						
-						// Write file
 						Path outFile = subVersion.right().resolve(relativeFile);
-						
 						if (subVersion.right().equals(file)) {
-							currentFileUpdater = Triple.of(outLines, path, outFile);
-							continue;
-						}
+							ownVersion = subVersion.left();
+							ownFile = outFile;
+						} else
+							outFiles.put(subVersion.left(), outFile);
+					}
+					outFiles.put(null, new File(TaskPreprocessWatch.this.getProject().getProjectDir(), "src").toPath().toAbsolutePath().resolve(relativeFile));
 
-						schedule.scheduleAndLock(outFile);
-						Files.createDirectories(outFile.getParent());
-						SafeFileOperations.write(outFile, outLines, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+					// Write all outputs of this file together
+					List<Path> changed = new ArrayList<>();
+					try (AtomicFileWriter writer = new AtomicFileWriter(getFsync())) {
+						if (verbatim) {
+							currentFileUpdater = Triple.of(input, path, ownFile);
+							String inputHash = FileManifest.hash(input);
+							for (Entry<String, Path> outFile : outFiles.entrySet()) {
+								// Skip files that already have the content, so no events are triggered in the other watchers
+								if (SafeFileOperations.contentEquals(outFile.getValue(), input))
+									continue;
+								if (outFile.getKey() != null)
+									echoFilter.expect(outFile.getValue(), inputHash);
+								Files.createDirectories(outFile.getValue().getParent());
+								writer.write(outFile.getValue(), input);
+								changed.add(outFile.getValue());
+							}
+						} else {
+							// Stream the output of every version into its temporary file while the file is read once. The output of this version is kept for updating this file manually
+							ByteArrayOutputStream own = new ByteArrayOutputStream(input.length);
+							List<AtomicFileWriter.PendingFile> pending = new ArrayList<>();
+							Map<String, OutputStream> outputs = new LinkedHashMap<>();
+							for (Entry<String, Path> outFile : outFiles.entrySet()) {
+								Files.createDirectories(outFile.getValue().getParent());
+								AtomicFileWriter.PendingFile pendingFile = writer.open(outFile.getValue());
+								pending.add(pendingFile);
+								outputs.put(outFile.getKey(), pendingFile);
+							}
+							if (ownFile != null)
+								outputs.put(ownVersion, own);
+							Discombobulator.processor.preprocessAll(Channels.newChannel(new ByteArrayInputStream(input)), outputs, filename, split[split.length-1], FileManifest.hash(input));
+							for (OutputStream out : outputs.values()) {
+								out.close();
+							}
+							currentFileUpdater = Triple.of(own.toByteArray(), path, ownFile);
+
+							for (AtomicFileWriter.PendingFile pendingFile : pending) {
+								// Skip files that already have the content, so no events are triggered in the other watchers
+								if (SafeFileOperations.contentEquals(pendingFile.getPath(), pendingFile.getTempFile())) {
+									pendingFile.discard();
+									continue;
+								}
+								if (!outFiles.get(null).equals(pendingFile.getPath()))
+									echoFilter.expect(pendingFile.getPath(), pendingFile.getHash());
+								changed.add(pendingFile.getPath());
+							}
+						}
+						writer.commit();
+					}
+					for (Path outFile : changed) {
 						Files.setLastModifiedTime(outFile, Files.getLastModifiedTime(path));
 					}
-					// Modify this file in base project
-					String[] split = path.getFileName().toString().split("\\.");
-					List<String> lines = Discombobulator.processor.preprocess(null, inLines, filename, split[split.length-1]);
-					Path outFile = new File(TaskPreprocessWatch.this.getProject().getProjectDir(), "src").toPath().toAbsolutePath().resolve(relativeFile);
-					Files.createDirectories(outFile.getParent());
-					SafeFileOperations.write(outFile, lines, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
-					Files.setLastModifiedTime(outFile, Files.getLastModifiedTime(path));
 					System.out.println(String.format("Processed %s in %s", path.getFileName(), version));
 					
 					if (msgSeen == false) {
@@ -195,20 +262,27 @@ public class TaskPreprocessWatch extends DefaultTask {
 		};
 	}
 
+	/**
+	 * @return When preprocessed files are forced to the disk
+	 */
+	private AtomicFileWriter.SyncPolicy getFsync() {
+		return AtomicFileWriter.SyncPolicy.of(Discombobulator.config.getFsync().getOrNull());
+	}
+
 	/**
 	 * Custom closable FileWatcher Thread
 	 * <p>Previously the threads kept running in the background, even after the main thread closed. With this, we can close the threads for good.
+	 * <p>One thread watches the source folders of all versions.
 	 * @author Scribble
 	 *
 	 */
 	private class FileWatcherThread extends Thread {
 
-		private FileWatcher watcher;
+		private FileWatchService service;
 
-		public FileWatcherThread(FileWatcher watcher, String version) {
-			super("FileWatcher-" + version);
-			System.out.println("Started watching "+version);
-			this.watcher = watcher;
+		public FileWatcherThread(FileWatchService service) {
+			super("FileWatcher");
+			this.service = service;
 			this.setDaemon(true);
 			this.start();
 		}
@@ -216,13 +290,12 @@ public class TaskPreprocessWatch extends DefaultTask {
 		@Override
 		public void run() {
 			try {
-				watcher.watch();
+				service.watch();
 			} catch (IOException e) {
 				e.printStackTrace();
 			} catch (InterruptedException e) {
 				System.out.println("Interrupting "+this.getName());
-				if (watcher != null)
-					watcher.close();
+				service.close();
 				e.printStackTrace();
 			} catch (ClosedWatchServiceException e) {
 				System.out.println("Shutting down "+this.getName());
@@ -230,8 +303,7 @@ public class TaskPreprocessWatch extends DefaultTask {
 		}
 		
 		public void close() {
-			if(watcher!=null)
-				watcher.close();
+			service.close();
 		}
 	}
 }
@@ -0,0 +1,408 @@
+package com.minecrafttas.discombobulator.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Writes files by writing a temporary file next to them and renaming it into place.
+ *
+ * <p>Opening the file with truncation leaves it empty or half-written for a moment, which file watchers, IDEs and compilers can pick up.
+ * With the rename, anyone reading the file sees either the old or the new content. The temporary file is written through a single {@link FileChannel}.
+ *
+ * <p>By default nothing is flushed to the disk, like before. The {@link SyncPolicy} can make the writes durable:
+ * <ul>
+ * <li>{@link SyncPolicy#ALWAYS} forces every file to the disk before it is renamed</li>
+ * <li>{@link SyncPolicy#GROUP} keeps the temporary files open until {@link #commit()}, then forces all of them and renames them together. The folders are only forced once per commit</li>
+ * </ul>
+ * Files can also be written while their content is still generated with {@link #open(Path)}, those are always renamed on commit.
+ * Temporary files that were not committed are deleted on {@link #close()}.
+ */
+public class AtomicFileWriter implements Closeable {
+
+	/**
+	 * The ending of temporary files, so file watchers can ignore them
+	 */
+	public static final String TEMP_ENDING = ".discombobulator-tmp";
+
+	private static final AtomicLong counter = new AtomicLong();
+
+	/**
+	 * When files are forced to the disk
+	 */
+	public static enum SyncPolicy {
+		/**
+		 * Never, the operating system writes the files whenever it wants
+		 */
+		NONE,
+		/**
+		 * All files written since the last commit are forced to the disk together on {@link AtomicFileWriter#commit()}
+		 */
+		GROUP,
+		/**
+		 * Every file is forced to the disk before it is renamed
+		 */
+		ALWAYS;
+
+		/**
+		 * @param name The name of the policy, ignoring case. Null is {@link #NONE}
+		 * @return The policy
+		 */
+		public static SyncPolicy of(String name) {
+			if (name == null)
+				return NONE;
+			try {
+				return valueOf(name.trim().toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(String.format("Unknown fsync policy %s, use none, group or always", name));
+			}
+		}
+	}
+
+	private final SyncPolicy policy;
+
+	/**
+	 * Temporary files waiting for the next commit
+	 */
+	private final List<Pending> pending = new ArrayList<>();
+
+	/**
+	 * @param policy When files are forced to the disk
+	 */
+	public AtomicFileWriter(SyncPolicy policy) {
+		this.policy = policy;
+	}
+
+	/**
+	 * Writes the bytes to the file. With {@link SyncPolicy#GROUP}, the file is only replaced on {@link #commit()}
+	 * @param path File to write to
+	 * @param bytes Bytes to write to file
+	 * @throws IOException
+	 */
+	public void write(Path path, byte[] bytes) throws IOException {
+		write(path, ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Copies a file byte for byte with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, so the content doesn't have to pass through the heap. With {@link SyncPolicy#GROUP}, the file is only replaced on {@link #commit()}
+	 * @param source File to copy
+	 * @param path File to write to
+	 * @throws IOException
+	 */
+	public void copy(Path source, Path path) throws IOException {
+		write(path, channel -> {
+			try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+				long size = in.size();
+				long position = 0;
+				while (position < size) {
+					position += in.transferTo(position, size - position, channel);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Opens a temporary file for the path to write to while the content is still being generated. The file is only replaced on {@link #commit()}, no matter the policy.
+	 * @param path File to write to
+	 * @return The stream to the temporary file. Has to be closed before committing
+	 * @throws IOException
+	 */
+	public PendingFile open(Path path) throws IOException {
+		Pending file = openTemp(path);
+		pending.add(file);
+		return new PendingFile(file);
+	}
+
+	private void write(Path path, ByteBuffer buffer) throws IOException {
+		write(path, channel -> {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		});
+	}
+
+	/**
+	 * Writes the content to a new temporary file
+	 */
+	@FunctionalInterface
+	private static interface Content {
+		public void writeTo(FileChannel channel) throws IOException;
+	}
+
+	private void write(Path path, Content content) throws IOException {
+		Pending file = openTemp(path);
+		try {
+			content.writeTo(file.channel);
+		} catch (IOException e) {
+			file.delete();
+			throw e;
+		}
+
+		if (policy == SyncPolicy.GROUP) {
+			pending.add(file);
+			return;
+		}
+
+		try {
+			if (policy == SyncPolicy.ALWAYS)
+				file.channel.force(true);
+			file.channel.close();
+			move(file.temp, path);
+		} catch (IOException e) {
+			file.delete();
+			throw e;
+		}
+		if (policy == SyncPolicy.ALWAYS)
+			forceDirectory(path.getParent());
+	}
+
+	private Pending openTemp(Path path) throws IOException {
+		Path temp = path.resolveSibling("." + path.getFileName() + "." + counter.incrementAndGet() + TEMP_ENDING);
+		Pending file = new Pending(path, temp, FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+		try {
+			copyPermissions(path, temp);
+		} catch (IOException e) {
+			file.delete();
+			throw e;
+		}
+		return file;
+	}
+
+	/**
+	 * Renames all files written since the last commit into place. Unless the policy is {@link SyncPolicy#NONE}, they are forced to the disk first
+	 * @throws IOException
+	 */
+	public void commit() throws IOException {
+		if (pending.isEmpty())
+			return;
+		try {
+			for (Pending file : pending) {
+				if (policy != SyncPolicy.NONE)
+					file.channel.force(true);
+				file.channel.close();
+			}
+
+			Set<Path> directories = new LinkedHashSet<>();
+			while (!pending.isEmpty()) {
+				Pending file = pending.get(0);
+				move(file.temp, file.path);
+				pending.remove(0);
+				directories.add(file.path.getParent());
+			}
+			if (policy != SyncPolicy.NONE) {
+				for (Path directory : directories) {
+					forceDirectory(directory);
+				}
+			}
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Deletes the temporary files that were not committed
+	 */
+	@Override
+	public void close() throws IOException {
+		IOException exception = null;
+		for (Pending file : pending) {
+			try {
+				file.delete();
+			} catch (IOException e) {
+				exception = e;
+			}
+		}
+		pending.clear();
+		if (exception != null)
+			throw exception;
+	}
+
+	/**
+	 * A temporary file waiting for the next commit
+	 */
+	private static class Pending {
+		private final Path path;
+		private final Path temp;
+		private final FileChannel channel;
+
+		private Pending(Path path, Path temp, FileChannel channel) {
+			this.path = path;
+			this.temp = temp;
+			this.channel = channel;
+		}
+
+		private void delete() throws IOException {
+			try {
+				channel.close();
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+
+	/**
+	 * <p>A stream to a temporary file opened by {@link AtomicFileWriter#open(Path)}.
+	 *
+	 * <p>The content is hashed while it is written, so it can be compared to the last run without reading the file again.
+	 * If the content turns out to be unchanged, the file can be discarded before the commit.
+	 */
+	public final class PendingFile extends OutputStream {
+		private final Pending file;
+		private final MessageDigest digest;
+		private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+		private String hash;
+
+		private PendingFile(Pending file) {
+			this.file = file;
+			try {
+				this.digest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (!buffer.hasRemaining())
+				flushBuffer();
+			buffer.put((byte) b);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			while (length > 0) {
+				if (!buffer.hasRemaining())
+					flushBuffer();
+				int count = Math.min(length, buffer.remaining());
+				buffer.put(bytes, offset, count);
+				offset += count;
+				length -= count;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			flushBuffer();
+		}
+
+		private void flushBuffer() throws IOException {
+			if (hash != null)
+				throw new IOException("The file was already closed");
+			buffer.flip();
+			digest.update(buffer.array(), 0, buffer.limit());
+			while (buffer.hasRemaining()) {
+				file.channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		/**
+		 * Writes the rest of the content. The file stays pending until the commit
+		 */
+		@Override
+		public void close() throws IOException {
+			if (hash != null)
+				return;
+			flushBuffer();
+			hash = HexFormat.of().formatHex(digest.digest());
+		}
+
+		/**
+		 * @return The SHA-256 hash of the content as hex string, the same as {@link FileManifest#hash(byte[])}
+		 */
+		public String getHash() {
+			if (hash == null)
+				throw new IllegalStateException("The file was not closed yet");
+			return hash;
+		}
+
+		/**
+		 * @return The file that is replaced on commit
+		 */
+		public Path getPath() {
+			return file.path;
+		}
+
+		/**
+		 * @return The temporary file with the content written so far
+		 */
+		public Path getTempFile() {
+			return file.temp;
+		}
+
+		/**
+		 * Deletes the temporary file, so the file is not replaced on commit
+		 * @throws IOException
+		 */
+		public void discard() throws IOException {
+			pending.remove(file);
+			file.delete();
+		}
+	}
+
+	/**
+	 * @param path The path to check
+	 * @return If the path is a temporary file of this writer
+	 */
+	public static boolean isTempFile(Path path) {
+		Path filename = path.getFileName();
+		return filename != null && filename.toString().endsWith(TEMP_ENDING);
+	}
+
+	private static void move(Path temp, Path path) throws IOException {
+		try {
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Gives the temporary file the permissions of the file it replaces, as the rename keeps the permissions of the temporary file
+	 */
+	private static void copyPermissions(Path path, Path temp) throws IOException {
+		if (!Files.exists(path))
+			return;
+		try {
+			Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(path));
+		} catch (UnsupportedOperationException e) {
+			// Not a POSIX file system, like on Windows. The temporary file gets the default permissions of the folder, like the file had
+		}
+	}
+
+	/**
+	 * Forces a folder to the disk, so a rename in it is durable. Not every system can open folders, there it is skipped
+	 * @throws IOException If the folder could be opened, but not forced to the disk
+	 */
+	private static void forceDirectory(Path directory) throws IOException {
+		if (directory == null)
+			return;
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(directory, StandardOpenOption.READ);
+		} catch (AccessDeniedException | UnsupportedOperationException e) {
+			// Windows can't open folders. There the rename is already durable once the file system committed it, so there is nothing to force
+			return;
+		}
+		try (channel) {
+			channel.force(true);
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package com.minecrafttas.discombobulator.utils;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Runs a job for a path once the events of that path stopped for a quiet period.
+ *
+ * <p>Saving a file in an IDE often causes a burst of events, like a create, a truncate and a write. Every new event of a path replaces the pending job of that path and starts the quiet period again,
+ * so the burst is processed once, with the final content. A path that keeps getting events is still processed once the maximum delay since its first pending event passed.
+ *
+ * <p>The jobs run on an {@link OrderedExecutor}, ordered by a key that is the path itself unless given otherwise. Jobs with different keys run in parallel, jobs with the same key one after another,
+ * so two jobs that write the same files never run at the same time.
+ * The thread that reports the events only schedules the jobs and is free again right away.
+ *
+ * <p>The time and the waiting come from a {@link Timer}, a scheduler thread and {@link System#nanoTime()} unless given otherwise.
+ */
+public class Debouncer implements Closeable {
+
+	private final long quietPeriod;
+
+	private final long maxDelay;
+
+	private final Timer timer;
+
+	private final OrderedExecutor workers;
+
+	/**
+	 * The pending jobs by path
+	 */
+	private final Map<Path, Pending> pending = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a debouncer that runs one job at a time
+	 * @param quietPeriod The time without events of a path before its job runs, in milliseconds
+	 * @param maxDelay The longest time a job waits after the first event of its path, in milliseconds
+	 */
+	public Debouncer(long quietPeriod, long maxDelay) {
+		this(quietPeriod, maxDelay, 1);
+	}
+
+	/**
+	 * @param quietPeriod The time without events of a path before its job runs, in milliseconds
+	 * @param maxDelay The longest time a job waits after the first event of its path, in milliseconds
+	 * @param parallelism The maximum number of jobs with different keys running at the same time
+	 */
+	public Debouncer(long quietPeriod, long maxDelay, int parallelism) {
+		this(quietPeriod, maxDelay, parallelism, new SystemTimer());
+	}
+
+	/**
+	 * @param quietPeriod The time without events of a path before its job runs, in milliseconds
+	 * @param maxDelay The longest time a job waits after the first event of its path, in milliseconds
+	 * @param parallelism The maximum number of jobs with different keys running at the same time
+	 * @param timer The timer to wait for the quiet period with, closed with the debouncer
+	 */
+	public Debouncer(long quietPeriod, long maxDelay, int parallelism, Timer timer) {
+		if (quietPeriod < 0 || maxDelay < quietPeriod)
+			throw new IllegalArgumentException(String.format("The quiet period of %s ms can't be negative or longer than the maximum delay of %s ms", quietPeriod, maxDelay));
+		this.quietPeriod = TimeUnit.MILLISECONDS.toNanos(quietPeriod);
+		this.maxDelay = TimeUnit.MILLISECONDS.toNanos(maxDelay);
+		this.timer = timer;
+		this.workers = new OrderedExecutor("FileWatcher-Worker", parallelism);
+	}
+
+	/**
+	 * Schedules the job of a path, replacing the pending job of the path
+	 * @param path The path the event happened at
+	 * @param job The job to run once the events of the path stopped
+	 */
+	public void schedule(Path path, Runnable job) {
+		schedule(path, path, job);
+	}
+
+	/**
+	 * Schedules the job of a path, replacing the pending job of the path
+	 * @param path The path the event happened at
+	 * @param order The key of the job, jobs with the same key run one after another, even for different paths
+	 * @param job The job to run once the events of the path stopped
+	 */
+	public void schedule(Path path, Path order, Runnable job) {
+		pending.compute(path, (key, previous) -> {
+			long now = timer.nanoTime();
+			long firstEvent = now;
+			if (previous != null) {
+				previous.future.cancel(false);
+				firstEvent = previous.firstEvent;
+			}
+			long delay = Math.max(0, Math.min(quietPeriod, firstEvent + maxDelay - now));
+
+			Pending next = new Pending(firstEvent);
+			next.future = timer.schedule(() -> run(path, order, next, job), delay);
+			return next;
+		});
+	}
+
+	private void run(Path path, Path order, Pending job, Runnable runnable) {
+		pending.remove(path, job);	// A new event from now on schedules a new job, which runs after this one
+		workers.submit(order, () -> {
+			try {
+				runnable.run();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		});
+	}
+
+	/**
+	 * @return The number of paths with a job that is waiting for its events to stop plus the number of keys with a job that is running
+	 */
+	public int getPendingCount() {
+		return pending.size() + workers.getActiveCount();
+	}
+
+	/**
+	 * Cancels the pending jobs and stops the threads
+	 */
+	@Override
+	public void close() {
+		timer.close();
+		workers.close();
+		pending.clear();
+	}
+
+	/**
+	 * A job waiting for the events of its path to stop
+	 */
+	private static class Pending {
+		private final long firstEvent;
+		private Future<?> future;
+
+		private Pending(long firstEvent) {
+			this.firstEvent = firstEvent;
+		}
+	}
+
+	/**
+	 * The clock of a debouncer and the scheduler of its pending jobs
+	 */
+	public interface Timer extends Closeable {
+
+		/**
+		 * @return The current time in nanoseconds, only meaningful compared to other times of the same timer, like {@link System#nanoTime()}
+		 */
+		public long nanoTime();
+
+		/**
+		 * Runs the job once the delay passed
+		 * @param job The job to run
+		 * @param delay The time to wait before running the job, in nanoseconds
+		 * @return The future to cancel the job with
+		 */
+		public Future<?> schedule(Runnable job, long delay);
+
+		/**
+		 * Drops the jobs that didn't run yet
+		 */
+		@Override
+		public void close();
+	}
+
+	/**
+	 * Waits on a daemon thread, with the time of {@link System#nanoTime()}
+	 */
+	private static class SystemTimer implements Timer {
+
+		private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "FileWatcher-Debounce");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		@Override
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+
+		@Override
+		public Future<?> schedule(Runnable job, long delay) {
+			return scheduler.schedule(job, delay, TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public void close() {
+			scheduler.shutdownNow();
+		}
+	}
+}
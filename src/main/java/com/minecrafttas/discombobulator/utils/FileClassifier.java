@@ -0,0 +1,103 @@
+package com.minecrafttas.discombobulator.utils;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * <p>Decides which files are preprocessed and which are copied as they are.
+ *
+ * <p>Images, sounds and other resources can't contain version statements. Decoding them either fails or is a waste of time, so they are copied byte for byte instead.
+ * A file is copied if
+ * <ul>
+ * <li>its file ending is a known binary format, like png or ogg</li>
+ * <li>it matches one of the configured passthrough globs</li>
+ * <li>its content looks binary, i.e. it has a zero byte near the start</li>
+ * </ul>
+ * The first two only need the path, so those files don't have to be read into memory at all.
+ * The content is only checked for zero bytes. A text file that is not valid UTF-8 fails when it is decoded for preprocessing, instead of being copied without its version statements.
+ */
+public class FileClassifier {
+
+	/**
+	 * File endings of formats that are always binary
+	 */
+	private static final Set<String> binaryEndings = Set.of(
+			"png", "jpg", "jpeg", "gif", "bmp", "ico", "psd", "xcf",
+			"ogg", "wav", "mp3", "flac",
+			"ttf", "otf", "woff", "woff2",
+			"zip", "jar", "gz", "class",
+			"nbt", "dat", "mca", "schem", "litematic",
+			"so", "dll", "dylib", "exe", "bin"
+	);
+
+	/**
+	 * The number of bytes searched for a zero byte, the same as git uses
+	 */
+	private static final int SNIFF_LENGTH = 8000;
+
+	/**
+	 * Globs containing a / are matched against the whole relative path, the others against the filename
+	 */
+	private final List<PathMatcher> pathGlobs = new ArrayList<>();
+	private final List<PathMatcher> filenameGlobs = new ArrayList<>();
+
+	/**
+	 * @param passthrough Glob patterns of files that are copied as they are, e.g. <code>*.txt</code> or <code>main/resources/assets/**</code>
+	 */
+	public FileClassifier(List<String> passthrough) {
+		if (passthrough == null)
+			passthrough = Collections.emptyList();
+		for (String glob : passthrough) {
+			PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+			if (glob.contains("/"))
+				pathGlobs.add(matcher);
+			else
+				filenameGlobs.add(matcher);
+		}
+	}
+
+	/**
+	 * Checks the path of a file, without reading it
+	 * @param path The path of the file relative to the source folder
+	 * @return If the file is copied as it is because of its file ending or a passthrough glob
+	 */
+	public boolean isPassthrough(Path path) {
+		Path filename = path.getFileName();
+		if (filename == null)
+			return false;
+		String name = filename.toString();
+		int dot = name.lastIndexOf('.');
+		if (dot != -1 && binaryEndings.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT)))
+			return true;
+
+		for (PathMatcher matcher : filenameGlobs) {
+			if (matcher.matches(filename))
+				return true;
+		}
+		for (PathMatcher matcher : pathGlobs) {
+			if (matcher.matches(path))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks the start of the content of a file, without decoding it
+	 * @param bytes The content of the file
+	 * @return If the file has a zero byte near the start
+	 */
+	public static boolean isBinary(byte[] bytes) {
+		int length = Math.min(bytes.length, SNIFF_LENGTH);
+		for (int i = 0; i < length; i++) {
+			if (bytes[i] == 0)
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,274 @@
+package com.minecrafttas.discombobulator.utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Remembers what was preprocessed in the last run, so it survives restarts of gradle and cleaning of the gradle caches.
+ *
+ * <p>For every relative path of a base file, it stores the hash of the base file and the hash, size and modification time of the output of every version.
+ * The whole manifest belongs to one configuration fingerprint. If the fingerprint changed, the manifest is discarded.
+ * <pre>
+ * # fingerprint 1b4f...
+ * com/minecrafttas/Example.java	e3b0...	1.14.4:1032:1690000000000:9f86...	1.12.2:1040:1690000000000:2c26...
+ * </pre>
+ *
+ * <p>A base file with the same hash, whose outputs still have the recorded size and modification time, does not have to be preprocessed again.
+ * Paths in the manifest that are not in the base source folder anymore are stale, their outputs can be deleted without walking the version folders.
+ */
+public class FileManifest {
+
+	/**
+	 * The file the manifest is stored in
+	 */
+	private final Path file;
+
+	/**
+	 * The configuration fingerprint of the manifest
+	 */
+	private final String fingerprint;
+
+	/**
+	 * If the manifest was loaded from a previous run with the same fingerprint
+	 */
+	private final boolean loaded;
+
+	/**
+	 * The entries by relative path of the base file, using / as separator
+	 */
+	private final Map<String, FileEntry> entries = new ConcurrentHashMap<>();
+
+	private FileManifest(Path file, String fingerprint, boolean loaded) {
+		this.file = file;
+		this.fingerprint = fingerprint;
+		this.loaded = loaded;
+	}
+
+	/**
+	 * Loads the manifest from the last run. Returns an empty manifest if there is none, it can't be read or the fingerprint changed
+	 * @param file The file the manifest is stored in
+	 * @param fingerprint The configuration fingerprint of this run
+	 * @return The manifest
+	 */
+	public static FileManifest load(Path file, String fingerprint) {
+		if (!Files.exists(file))
+			return new FileManifest(file, fingerprint, false);
+
+		try {
+			List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+			if (lines.isEmpty() || !lines.get(0).equals("# fingerprint " + fingerprint))
+				return new FileManifest(file, fingerprint, false);
+
+			FileManifest manifest = new FileManifest(file, fingerprint, true);
+			for (int i = 1; i < lines.size(); i++) {
+				String[] split = lines.get(i).split("\t");
+				if (split.length < 2)
+					continue;
+				Map<String, Output> outputs = new LinkedHashMap<>();
+				for (int j = 2; j < split.length; j++) {
+					String[] output = split[j].split(":", 4);	// The version can't contain a colon, the hash can't either
+					outputs.put(output[0], new Output(output[3], Long.parseLong(output[1]), Long.parseLong(output[2])));
+				}
+				manifest.entries.put(split[0], new FileEntry(split[1], outputs));
+			}
+			return manifest;
+		} catch (Exception e) {
+			System.err.println(String.format("Could not read %s, preprocessing everything: %s", file, e.getMessage()));
+			return new FileManifest(file, fingerprint, false);
+		}
+	}
+
+	/**
+	 * Saves the manifest by writing it to a temporary file first and replacing the old manifest
+	 * @throws IOException
+	 */
+	public void save() throws IOException {
+		Files.createDirectories(file.getParent());
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+			writer.write("# fingerprint " + fingerprint);
+			writer.newLine();
+			for (Entry<String, FileEntry> entry : new TreeMap<>(entries).entrySet()) {
+				writer.write(entry.getKey());
+				writer.write('\t');
+				writer.write(entry.getValue().inputHash);
+				for (Entry<String, Output> output : entry.getValue().outputs.entrySet()) {
+					Output value = output.getValue();
+					writer.write(String.format("\t%s:%s:%s:%s", output.getKey(), value.size, value.lastModified, value.hash));
+				}
+				writer.newLine();
+			}
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @return If the manifest was loaded from a previous run with the same fingerprint. If not, it is empty and stale files have to be searched for on the disk
+	 */
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * @param path The relative path of the base file
+	 * @return The entry of the base file or null if there is none
+	 */
+	public FileEntry get(String path) {
+		return entries.get(path);
+	}
+
+	/**
+	 * @param path The relative path of the base file
+	 * @param entry The entry of the base file
+	 */
+	public void put(String path, FileEntry entry) {
+		entries.put(path, entry);
+	}
+
+	/**
+	 * @param path The relative path of the base file
+	 */
+	public void remove(String path) {
+		entries.remove(path);
+	}
+
+	/**
+	 * @return The relative paths of all base files in the manifest
+	 */
+	public Set<String> getPaths() {
+		return Collections.unmodifiableSet(entries.keySet());
+	}
+
+	/**
+	 * @param path A relative path
+	 * @return The path as used in the manifest, with / as separator
+	 */
+	public static String toKey(Path path) {
+		return path.toString().replace('\\', '/');
+	}
+
+	/**
+	 * @param bytes The bytes to hash
+	 * @return The SHA-256 hash of the bytes as hex string
+	 */
+	public static String hash(byte[] bytes) {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Hashes a file in chunks, so it doesn't have to be loaded into memory
+	 * @param file The file to hash
+	 * @return The SHA-256 hash of the file as hex string
+	 * @throws IOException
+	 */
+	public static String hash(Path file) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * The state of a base file and its outputs after the last run
+	 */
+	public static class FileEntry {
+		private final String inputHash;
+		private final Map<String, Output> outputs;
+
+		/**
+		 * @param inputHash The hash of the base file
+		 * @param outputs The outputs by version
+		 */
+		public FileEntry(String inputHash, Map<String, Output> outputs) {
+			this.inputHash = inputHash;
+			this.outputs = outputs;
+		}
+
+		public String getInputHash() {
+			return inputHash;
+		}
+
+		/**
+		 * @param version The version
+		 * @return The output of the version or null if there is none
+		 */
+		public Output getOutput(String version) {
+			return outputs.get(version);
+		}
+	}
+
+	/**
+	 * An output file of a base file
+	 */
+	public static class Output {
+		private final String hash;
+		private final long size;
+		private final long lastModified;
+
+		/**
+		 * @param hash The hash of the content
+		 * @param size The size in bytes
+		 * @param lastModified The modification time in milliseconds
+		 */
+		public Output(String hash, long size, long lastModified) {
+			this.hash = hash;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * Creates an output from a file on the disk
+		 * @param file The output file
+		 * @param hash The hash of the content of the file
+		 * @return The output
+		 * @throws IOException
+		 */
+		public static Output of(Path file, String hash) throws IOException {
+			return new Output(hash, Files.size(file), Files.getLastModifiedTime(file).toMillis());
+		}
+
+		public String getHash() {
+			return hash;
+		}
+
+		/**
+		 * Checks if the file on the disk is still the one that was written, without reading it
+		 * @param file The output file
+		 * @return If the file exists with the same size and modification time
+		 */
+		public boolean isUnchanged(Path file) {
+			try {
+				return Files.size(file) == size && Files.getLastModifiedTime(file).toMillis() == lastModified;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+	}
+}
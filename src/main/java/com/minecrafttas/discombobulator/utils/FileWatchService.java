@@ -0,0 +1,171 @@
+package com.minecrafttas.discombobulator.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * <p>Watches multiple source folders with one {@link WatchService} on one thread.
+ *
+ * <p>Every watched folder costs a watch of the operating system, on linux an inotify watch out of <code>fs.inotify.max_user_watches</code>.
+ * One service for all versions keeps one set of watches and one thread, instead of one per version. The events are passed to the {@link FileWatcher} of the folder they happened in.
+ */
+public class FileWatchService implements Closeable {
+
+	/**
+	 * The maximum number of inotify watches per user on linux
+	 */
+	private static final Path MAX_USER_WATCHES = Path.of("/proc/sys/fs/inotify/max_user_watches");
+
+	/**
+	 * The default time without events of a file before it is processed, in milliseconds
+	 */
+	public static final int DEFAULT_QUIET_PERIOD = 50;
+
+	/**
+	 * The default longest time a file waits to be processed after its first event, in milliseconds
+	 */
+	public static final int DEFAULT_MAX_DELAY = 500;
+
+	private final WatchService service;
+
+	private final Debouncer debouncer;
+
+	private final List<FileWatcher> watchers = new CopyOnWriteArrayList<>();
+
+	/**
+	 * The watchers by watched folder, so the watcher of an event is found without searching every watcher
+	 */
+	private final Map<Path, FileWatcher> owners = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a new file watching service with the default quiet period and maximum delay, processing as many files at once as there are processors
+	 * @throws IOException Watch service not supported
+	 */
+	public FileWatchService() throws IOException {
+		this(DEFAULT_QUIET_PERIOD, DEFAULT_MAX_DELAY, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a new file watching service
+	 * @param quietPeriod The time without events of a file before it is processed, in milliseconds
+	 * @param maxDelay The longest time a file waits to be processed after its first event, in milliseconds
+	 * @param parallelism The maximum number of files processed at the same time. Events of the same file are always processed one after another
+	 * @throws IOException Watch service not supported
+	 */
+	public FileWatchService(long quietPeriod, long maxDelay, int parallelism) throws IOException {
+		this(new Debouncer(quietPeriod, maxDelay, parallelism));
+	}
+
+	/**
+	 * Creates a new file watching service that passes the file events to the debouncer
+	 * @param debouncer The debouncer that runs the jobs of the file events, closed with the service
+	 * @throws IOException Watch service not supported
+	 */
+	public FileWatchService(Debouncer debouncer) throws IOException {
+		this.debouncer = debouncer;
+		this.service = FileSystems.getDefault().newWatchService();
+	}
+
+	/**
+	 * Registers all folders of the watcher and passes their events to it from now on
+	 * @param watcher The watcher to register
+	 * @param parallelism The number of threads to register the folders with
+	 * @throws IOException Watch service not supported or out of watches
+	 */
+	public void register(FileWatcher watcher, int parallelism) throws IOException {
+		watcher.init(this.service, this.owners, this.debouncer, parallelism);
+		this.watchers.add(watcher);
+	}
+
+	/**
+	 * Watches the file system until the service is closed
+	 * @throws InterruptedException Thread was interrupted
+	 * @throws IOException File system problems
+	 */
+	public void watch() throws InterruptedException, IOException {
+		// Watch for file system events
+		WatchKey key;
+		while ((key = this.service.take()) != null) {
+			dispatch(key);
+			key.reset();
+		}
+	}
+
+	/**
+	 * Passes the events of a watch key to the watcher of the folder the key belongs to. The file events are processed later, once the events of the file stopped
+	 * @param key The watch key with events, the watchable of the key is the folder the events happened in
+	 * @throws IOException File system problems
+	 */
+	public void dispatch(WatchKey key) throws IOException {
+		FileWatcher watcher = getWatcher((Path) key.watchable());
+		if (watcher != null)
+			watcher.handle(key);
+	}
+
+	/**
+	 * @param folder The absolute path of a watched folder
+	 * @return The watcher the folder belongs to or null if it is not watched
+	 */
+	public FileWatcher getWatcher(Path folder) {
+		return this.owners.get(folder);
+	}
+
+	/**
+	 * @return The number of watched folders of all watchers
+	 */
+	public int getWatchCount() {
+		int count = 0;
+		for (FileWatcher watcher : this.watchers) {
+			count += watcher.getWatchCount();
+		}
+		return count;
+	}
+
+	/**
+	 * Prints how many inotify watches are used by this service. Other programs of the same user, like the IDE, take their watches from the same limit,
+	 * so a warning is printed once half of the limit is used. Does nothing if the limit can't be read, like on Windows and macOS
+	 */
+	public void reportWatchLimit() {
+		long limit = readWatchLimit(MAX_USER_WATCHES);
+		if (limit <= 0)
+			return;
+		int count = getWatchCount();
+		System.out.println(String.format("Watching %s folders, %s%% of the inotify limit of %s", count, count * 100 / limit, limit));
+		if (count * 2L > limit)
+			System.err.println(String.format("Watching more than half of fs.inotify.max_user_watches. Once the limit is reached, new folders are not watched anymore. Raise it with: sudo sysctl fs.inotify.max_user_watches=%s", Math.max(limit * 2, 524288)));
+	}
+
+	/**
+	 * @param file The file with the limit, usually /proc/sys/fs/inotify/max_user_watches
+	 * @return The limit or -1 if it can't be read
+	 */
+	public static long readWatchLimit(Path file) {
+		try {
+			return Long.parseLong(Files.readString(file).trim());
+		} catch (IOException | NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Closes the watch service, {@link #watch()} returns with a {@link java.nio.file.ClosedWatchServiceException}. Pending file events are dropped
+	 */
+	@Override
+	public void close() {
+		this.debouncer.close();
+		try {
+			this.service.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -1,7 +1,6 @@
 package com.minecrafttas.discombobulator.utils;
 
 import java.io.IOException;
-import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
@@ -10,38 +9,59 @@ import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
- * File watching service
+ * Handles the file system events of one source folder. The events are delivered by a {@link FileWatchService}, which watches all source folders with one watch service
  * @author Pancake
  */
 public abstract class FileWatcher {
 
 	private WatchService service;
 	private Path rootDir;
-	private Map<Path, WatchKey> watchKeys = new HashMap<>();
+	private Map<Path, WatchKey> watchKeys = new ConcurrentHashMap<>();
+	private Map<Path, FileWatcher> owners;
+	private Debouncer debouncer;
 
 	/**
-	 * Creates a new file watching service
+	 * The files with a modify event since their last job
+	 */
+	private Set<Path> modified = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Creates a new file watcher. It receives events after it was registered with {@link FileWatchService#register(FileWatcher, int)}
 	 * @param rootDir Base directory for watching
-	 * @throws IOException Watch service not supported
+	 * @throws IOException Invalid directory
 	 */
 	public FileWatcher(Path rootDir) throws IOException {
 		if (!Files.isDirectory(rootDir))
 			throw new IOException("Invalid path: " + rootDir);
-		this.service = FileSystems.getDefault().newWatchService();
 		this.rootDir = rootDir;
-		this.init();
 	}
 
 	/**
-	 * Initializes the watch service
-	 * @throws IOException Watch service not supported
+	 * Registers all existing subfolders recursively
+	 * @param service The watch service to register with
+	 * @param owners The watchers by watched folder of all watchers of the service, the folders of this watcher are added
+	 * @param debouncer The debouncer that runs the jobs of the file events
+	 * @param parallelism The number of threads to register the folders with
+	 * @throws IOException Watch service not supported or out of watches
 	 */
-	private void init() throws IOException {
-		// Add all existing subfolders recursively
+	void init(WatchService service, Map<Path, FileWatcher> owners, Debouncer debouncer, int parallelism) throws IOException {
+		this.service = service;
+		this.owners = owners;
+		this.debouncer = debouncer;
+		List<Path> directories = new ArrayList<>();
 		Files.walkFileTree(this.rootDir, new FileVisitor<Path>() {
 			// @formatter:off
 			@Override public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException { return FileVisitResult.CONTINUE; }
@@ -50,68 +70,120 @@ public abstract class FileWatcher {
 			// @formatter:on
 			@Override
 			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-				FileWatcher.this.watchKeys.put(dir.toAbsolutePath(), dir.register(FileWatcher.this.service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+				directories.add(FileWatcher.this.rootDir.relativize(dir));
 				return FileVisitResult.CONTINUE;
 			}
 		});
+
+		// Every folder is registered on its own, which adds up with thousands of packages
+		if (parallelism <= 1) {
+			for (Path dir : directories) {
+				this.register(this.rootDir.resolve(dir).toAbsolutePath());
+			}
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (Path dir : directories) {
+				futures.add(executor.submit(() -> {
+					this.register(this.rootDir.resolve(dir).toAbsolutePath());
+					return null;
+				}));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					futures.get(i).get();
+				} catch (ExecutionException e) {
+					throw new IOException(String.format("Could not watch %s: %s", this.rootDir.resolve(directories.get(i)), e.getCause().getMessage()), e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(String.format("Interrupted while watching %s", this.rootDir), e);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
 	}
 
-	public String getKeyByValue(Map<String, WatchKey> map, WatchKey value) {
-		for (Map.Entry<String, WatchKey> entry : map.entrySet())
-			if (value.equals(entry.getValue()))
-				return entry.getKey();
-		return null;
+	/**
+	 * @return The base directory for watching
+	 */
+	public Path getRootDir() {
+		return this.rootDir;
 	}
 
 	/**
-	 * Watches the file system
-	 * @throws InterruptedException Thread was interrupted
+	 * @return The number of watched folders
+	 */
+	public int getWatchCount() {
+		return this.watchKeys.size();
+	}
+
+	/**
+	 * Registers a folder with the watch service
+	 * @param path The absolute path of the folder
+	 * @throws IOException Watch service exception
+	 */
+	private void register(Path path) throws IOException {
+		this.watchKeys.put(path, path.register(this.service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+		this.owners.put(path, this);
+	}
+
+	/**
+	 * Handles the events of a watch key of this watcher. Folders are registered and unregistered right away,
+	 * file events are passed to the debouncer, so a burst of events of a file only runs one job once the events stopped
+	 * @param key The watch key with events, the watchable of the key is the folder the events happened in
 	 * @throws IOException File system problems
 	 */
-	public final void watch() throws InterruptedException, IOException {
-		// Watch for file system events
-		WatchKey key;
-		while ((key = this.service.take()) != null) {
-			Thread.sleep(400); // prevent multiple writes
-			for (var event : key.pollEvents()) {
-				// Find directory of event in the most inefficient way ever.
-				Path parent = null;
-				for (Map.Entry<Path, WatchKey> entry : this.watchKeys.entrySet())
-					if (key.equals(entry.getValue()))
-						parent = entry.getKey();
-
-				// Trigger events for file system events
-				var path = parent.resolve((Path) event.context()).toAbsolutePath();
-				if (!Files.isDirectory(path) && path.toFile().length() <= 0 && event.kind() != StandardWatchEventKinds.ENTRY_DELETE)
-					continue;
-
-				if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
-					if (this.watchKeys.containsKey(path))
-						this.deleteDirectory(path);
-					else
-						this.onDeleteFile(path);
-				} else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
-					if (Files.isDirectory(path))
-						this.newDirectory(path);
-					else
-						this.onNewFile(path);
-				} else if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY)
-					if (!Files.isDirectory(path))
-						this.onModifyFile(path);
+	void handle(WatchKey key) throws IOException {
+		Path parent = (Path) key.watchable();
+		for (var event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+				continue;
+
+			// Trigger events for file system events
+			var path = parent.resolve((Path) event.context()).toAbsolutePath();
+			if (AtomicFileWriter.isTempFile(path))	// Written by the preprocessor and renamed right away
+				continue;
+			// Saves of the same file in different versions write the same output files, so their jobs are ordered by the path in the version
+			var order = this.rootDir.toAbsolutePath().relativize(path);
+
+			if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+				if (this.watchKeys.containsKey(path))
+					this.deleteDirectory(path);
+				else
+					this.debouncer.schedule(path, order, () -> this.fileChanged(path));
+			} else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+				if (Files.isDirectory(path))
+					this.newDirectory(path);
+				else
+					this.debouncer.schedule(path, order, () -> this.fileChanged(path));
+			} else if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
+				if (!Files.isDirectory(path)) {
+					this.modified.add(path);
+					this.debouncer.schedule(path, order, () -> this.fileChanged(path));
+				}
 			}
-			key.reset();
 		}
 	}
 
 	/**
-	 * Closes the file watcher
+	 * Runs once the events of a file stopped. The file is checked now instead of when the events happened, so only its final state counts
+	 * @param path Path to file
 	 */
-	public final void close() {
-		try {
-			this.service.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+	private void fileChanged(Path path) {
+		boolean wasModified = this.modified.remove(path);
+		if (!Files.exists(path)) {
+			this.onDeleteFile(path);
+			return;
 		}
+		if (Files.isDirectory(path) || path.toFile().length() <= 0)
+			return;
+		if (wasModified)
+			this.onModifyFile(path);
+		else
+			this.onNewFile(path);
 	}
 
 	/**
@@ -121,17 +193,25 @@ public abstract class FileWatcher {
 	 */
 	protected void newDirectory(Path path) throws IOException {
 		// register new folder to watcher
-		this.watchKeys.put(path, path.register(this.service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+		this.register(path);
 	}
 
 	/**
-	 * Update file watcher when a directory is deleted
+	 * Update file watcher when a directory is deleted. The folders in the directory are gone as well, so they are unregistered too
 	 * @param path Path to directory
 	 * @throws IOException Watch service exception
 	 */
 	protected void deleteDirectory(Path path) throws IOException {
-		// unregister deleted folder from wather
-		this.watchKeys.get(path).cancel();
+		// unregister deleted folder and every folder in it from watcher
+		Iterator<Entry<Path, WatchKey>> iterator = this.watchKeys.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Entry<Path, WatchKey> entry = iterator.next();
+			if (entry.getKey().startsWith(path)) {
+				this.owners.remove(entry.getKey(), this);
+				entry.getValue().cancel();
+				iterator.remove();
+			}
+		}
 	}
 
 	/**
@@ -0,0 +1,65 @@
+package com.minecrafttas.discombobulator.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread safe cache with a maximum size, which evicts the least recently used entry once it is full
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class LRUCache<K, V> {
+
+	/**
+	 * The entries in access order, the eldest one being the least recently used
+	 */
+	private final LinkedHashMap<K, V> entries;
+
+	/**
+	 * Creates a new cache
+	 * @param capacity The maximum number of entries before the least recently used one gets evicted
+	 */
+	public LRUCache(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity has to be positive");
+		this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @param key The key to search for
+	 * @return The cached value or null if it isn't cached
+	 */
+	public synchronized V get(K key) {
+		return entries.get(key);
+	}
+
+	/**
+	 * Caches a value, possibly evicting the least recently used entry
+	 * @param key The key of the value
+	 * @param value The value to cache
+	 */
+	public synchronized void put(K key, V value) {
+		entries.put(key, value);
+	}
+
+	/**
+	 * @return The number of cached entries
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Removes all entries
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+}
@@ -0,0 +1,81 @@
+package com.minecrafttas.discombobulator.utils;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Runs jobs on a bounded number of threads, one after another per key.
+ *
+ * <p>Jobs with different keys run in parallel. Jobs with the same key never overlap and run in the order they were submitted. With the path of a file relative to its version folder as key,
+ * two saves that write the same output files can't interleave, even if they are saves of the same file in different versions.
+ *
+ * <p>The threads are a fixed number of daemon threads, so they don't keep the build running.
+ */
+public class OrderedExecutor implements Closeable {
+
+	private final ExecutorService executor;
+
+	/**
+	 * The last submitted job by key, removed once it completed
+	 */
+	private final Map<Path, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+	/**
+	 * @param name The name of the threads
+	 * @param parallelism The maximum number of jobs running at the same time
+	 */
+	public OrderedExecutor(String name, int parallelism) {
+		this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism), createThreadFactory(name));
+	}
+
+	/**
+	 * Runs the job after all jobs submitted with the same key before
+	 * @param key The key of the job
+	 * @param job The job to run
+	 * @return The future of the job, completed exceptionally if the job threw an exception
+	 */
+	public CompletableFuture<Void> submit(Path key, Runnable job) {
+		CompletableFuture<Void> next = tails.compute(key, (unused, tail) -> {
+			if (tail == null)
+				return CompletableFuture.runAsync(job, executor);
+			return tail.handle((result, exception) -> null).thenRunAsync(job, executor);	// Run after the previous job, even if it failed
+		});
+		next.whenComplete((result, exception) -> tails.remove(key, next));
+		return next;
+	}
+
+	/**
+	 * @return The number of keys with a job that didn't complete yet
+	 */
+	public int getActiveCount() {
+		return tails.size();
+	}
+
+	/**
+	 * Stops the threads, jobs that didn't start yet are dropped
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * @param name The name of the threads
+	 * @return A factory for numbered daemon threads
+	 */
+	private static ThreadFactory createThreadFactory(String name) {
+		AtomicInteger count = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
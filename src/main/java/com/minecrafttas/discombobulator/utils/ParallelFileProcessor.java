@@ -0,0 +1,100 @@
+package com.minecrafttas.discombobulator.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * <p>Processes files on multiple threads.
+ *
+ * <p>The files are scheduled on a work-stealing {@link ForkJoinPool}, the largest files first. That way a large file at the end can't hold up the whole run while every other thread is already idle.
+ *
+ * <p>Errors don't stop the other files. They are collected and returned sorted by path, so the same errors are reported in the same order, no matter which thread finished first.
+ */
+public class ParallelFileProcessor {
+
+	/**
+	 * A task run for every file
+	 */
+	@FunctionalInterface
+	public static interface FileTask {
+		/**
+		 * @param path The path of the file relative to the root
+		 * @throws Exception If the file could not be processed
+		 */
+		public void process(Path path) throws Exception;
+	}
+
+	/**
+	 * Processes the files, largest first
+	 * @param root The directory the files are relative to
+	 * @param files The relative paths of the files
+	 * @param parallelism The number of threads to use. 1 or lower processes the files on the current thread
+	 * @param task The task to run for every file
+	 * @return The errors by relative path, sorted by path. Empty if every file was processed
+	 */
+	public static List<Pair<Path, Exception>> process(Path root, List<Path> files, int parallelism, FileTask task) {
+		List<Pair<Path, Long>> sized = new ArrayList<>();
+		for (Path file : files) {
+			sized.add(Pair.of(file, getSize(root.resolve(file))));
+		}
+		sized.sort(Comparator.comparing((Pair<Path, Long> file) -> file.right()).reversed().thenComparing(Pair::left));
+
+		Exception[] results = new Exception[sized.size()];
+
+		if (parallelism <= 1) {
+			for (int i = 0; i < sized.size(); i++) {
+				results[i] = run(task, sized.get(i).left());
+			}
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);	// Async mode runs submitted tasks first in first out, so the largest files start first
+			try {
+				List<ForkJoinTask<?>> tasks = new ArrayList<>();
+				for (int i = 0; i < sized.size(); i++) {
+					int index = i;
+					tasks.add(pool.submit(() -> {
+						results[index] = run(task, sized.get(index).left());
+					}));
+				}
+				for (ForkJoinTask<?> submitted : tasks) {
+					submitted.join();
+				}
+			} finally {
+				pool.shutdown();
+			}
+		}
+
+		List<Pair<Path, Exception>> errors = new ArrayList<>();
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] != null)
+				errors.add(Pair.of(sized.get(i).left(), results[i]));
+		}
+		errors.sort(Comparator.comparing(Pair::left));
+		return errors;
+	}
+
+	/**
+	 * @return The exception thrown by the task, null if there was none
+	 */
+	private static Exception run(FileTask task, Path file) {
+		try {
+			task.process(file);
+			return null;
+		} catch (Exception e) {
+			return e;
+		}
+	}
+
+	private static long getSize(Path file) {
+		try {
+			return Files.size(file);
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+}
@@ -3,11 +3,10 @@ package com.minecrafttas.discombobulator.utils;
 import java.awt.Desktop;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Safety improvements to some file operations
@@ -29,21 +28,42 @@ public class SafeFileOperations {
 	}
 
 	/**
-	 * Writes to a file but clears it first
-	 * @param path File to write to
-	 * @param lines Lines to write to file
-	 * @param options Options for writing to file
+	 * Compares a file to bytes, reading the file in chunks and stopping at the first difference
+	 * @param path The file to compare
+	 * @param bytes The bytes to compare to
+	 * @return True if the file exists and contains exactly the bytes
 	 */
-	public static void write(Path path, List<String> lines, StandardOpenOption... options) {
+	public static boolean contentEquals(Path path, byte[] bytes) {
 		try {
-			// Clear file
-			var w = new PrintWriter(path.toFile());
-			w.print("");
-			w.close();
-			// Write to file
-			Files.write(path, lines, options);
+			if (!Files.isRegularFile(path) || Files.size(path) != bytes.length)
+				return false;
+			try (InputStream in = Files.newInputStream(path)) {
+				byte[] buffer = new byte[8192];
+				int offset = 0;
+				int read;
+				while ((read = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+					if (offset + read > bytes.length || !Arrays.equals(buffer, 0, read, bytes, offset, offset + read))
+						return false;
+					offset += read;
+				}
+				return offset == bytes.length;
+			}
 		} catch (IOException e) {
-			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Compares two files without loading them into memory
+	 * @param path The file to compare
+	 * @param other The file to compare to
+	 * @return True if both files exist and have exactly the same content
+	 */
+	public static boolean contentEquals(Path path, Path other) {
+		try {
+			return Files.isRegularFile(path) && Files.size(path) == Files.size(other) && Files.mismatch(path, other) == -1;
+		} catch (IOException e) {
+			return false;
 		}
 	}
 
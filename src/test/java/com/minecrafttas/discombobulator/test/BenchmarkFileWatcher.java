@@ -0,0 +1,143 @@
+package com.minecrafttas.discombobulator.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.minecrafttas.discombobulator.utils.FileWatchService;
+import com.minecrafttas.discombobulator.utils.FileWatcher;
+
+/**
+ * Replays the events of a branch switch over a deep package tree. Times finding the watcher of every event in the {@link FileWatchService}, compared to searching the folder of every event in all watch keys, like it was done before. Not part of the test run, run it with <code>gradlew benchmark</code>
+ */
+@Tag("benchmark")
+class BenchmarkFileWatcher {
+
+	/**
+	 * A watcher that counts the modified files
+	 */
+	private static class CountingWatcher extends FileWatcher {
+
+		private AtomicInteger modified = new AtomicInteger();
+
+		public CountingWatcher(Path rootDir) throws IOException {
+			super(rootDir);
+		}
+
+		// @formatter:off
+		@Override protected void onNewFile(Path path) { }
+		@Override protected void onModifyFile(Path path) { modified.incrementAndGet(); }
+		@Override protected void onDeleteFile(Path path) { }
+		// @formatter:on
+	}
+
+	/**
+	 * Waits until the watcher processed the number of files
+	 */
+	private void awaitModified(CountingWatcher watcher, int expected) throws InterruptedException {
+		long timeout = System.currentTimeMillis() + 10000;
+		while (watcher.modified.get() < expected && System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		assertEquals(expected, watcher.modified.get());
+	}
+
+	/**
+	 * Deletes a folder and everything in it
+	 */
+	private void deleteRecursive(Path root) throws IOException {
+		try (Stream<Path> paths = Files.walk(root)) {
+			List<Path> sorted = paths.sorted(Comparator.reverseOrder()).toList();
+			for (Path path : sorted) {
+				Files.deleteIfExists(path);
+			}
+		}
+	}
+
+	/**
+	 * Tree: 1000 packages, 12 folders deep. Events: 50 for every package
+	 * Expected: The events of every file are collapsed into one job, the folder of every event is found
+	 * @throws Exception
+	 */
+	@Test
+	void benchmarkBranchSwitch() throws Exception {
+		Path root = Files.createTempDirectory("discombobulator").toAbsolutePath();
+		try {
+			List<Path> packages = new ArrayList<>();
+			for (int i = 0; i < 1000; i++) {
+				Path dir = root.resolve(String.format("com/minecrafttas/discombobulator/module%s/feature%s/a/b/c/d/e/f/package%s", i % 10, i / 10 % 10, i));
+				Files.createDirectories(dir);
+				Files.writeString(dir.resolve("Example.java"), "class Example {}");
+				packages.add(dir);
+			}
+
+			List<WatchKey> keys = new ArrayList<>();
+			for (Path dir : packages) {
+				List<WatchEvent<?>> events = new ArrayList<>();
+				for (int i = 0; i < 50; i++) {
+					events.add(new ModifyEvent(Path.of("Example.java")));
+				}
+				keys.add(new ReplayKey(dir, events));
+			}
+			int eventCount = keys.size() * 50;
+
+			try (FileWatchService service = new FileWatchService()) {
+				CountingWatcher watcher = new CountingWatcher(root);
+				service.register(watcher, 4);
+
+				// Sanity check, the events of every file run one job
+				for (WatchKey key : keys) {
+					service.dispatch(key);
+				}
+				awaitModified(watcher, keys.size());
+
+				// The folder of every event searched in all watch keys
+				Map<Path, WatchKey> watchKeys = new HashMap<>();
+				for (WatchKey key : keys) {
+					watchKeys.put((Path) key.watchable(), key);
+				}
+				long start = System.nanoTime();
+				int scanned = 0;
+				for (WatchKey key : keys) {
+					for (int i = 0; i < key.pollEvents().size(); i++) {
+						for (Map.Entry<Path, WatchKey> entry : watchKeys.entrySet())
+							if (key.equals(entry.getValue()))
+								scanned++;
+					}
+				}
+				long scanTime = System.nanoTime() - start;
+				assertEquals(eventCount, scanned);
+
+				// The folder of every event looked up in the watchers by folder
+				start = System.nanoTime();
+				int found = 0;
+				for (WatchKey key : keys) {
+					for (int i = 0; i < key.pollEvents().size(); i++) {
+						if (service.getWatcher((Path) key.watchable()) == watcher)
+							found++;
+					}
+				}
+				long lookupTime = System.nanoTime() - start;
+				assertEquals(eventCount, found);
+
+				System.out.println(String.format("[branch switch] %s folders, %s events: searching the folders %.3f ms, looking up the folders %.3f ms", service.getWatchCount(), eventCount, scanTime / 1e6, lookupTime / 1e6));
+			}
+		} finally {
+			deleteRecursive(root);
+		}
+	}
+}
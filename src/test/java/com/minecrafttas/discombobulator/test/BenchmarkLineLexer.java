@@ -0,0 +1,78 @@
+package com.minecrafttas.discombobulator.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.minecrafttas.discombobulator.processor.LineLexer;
+
+/**
+ * Compares the {@link LineLexer} with the previously used regexes on long generated lines. Not part of the test run, run it with <code>gradlew benchmark</code>
+ */
+@Tag("benchmark")
+class BenchmarkLineLexer {
+
+	private final Pattern regexBlocks = Pattern.compile("^\\s*\\/\\/ *(#+) *(.+)");
+	private final Pattern regexPatterns = Pattern.compile("^.+\\/\\/ *@(.+);");
+
+	private LineLexer lexer = new LineLexer("//");
+
+	/**
+	 * Lines: Long lines of code with a pattern annotation
+	 */
+	@Test
+	void benchmarkCodeLines() {
+		String line = "\t\tMinecraft.getMinecraft().player.connection.sendPacket(packet);".repeat(200) + " // @GetMinecraft,GetPlayer;";
+		benchmark("code", line, 200);
+	}
+
+	/**
+	 * Lines: Many comments with an @ but without a semicolon, where the regex backtracks for every comment
+	 */
+	@Test
+	void benchmarkBacktracking() {
+		String line = "a//@".repeat(5000);
+		benchmark("backtracking", line, 5);
+	}
+
+	/**
+	 * Lines: A long version statement
+	 */
+	@Test
+	void benchmarkStatement() {
+		String line = "\t//" + " ".repeat(5000) + "#".repeat(5000) + " 1.16.1";
+		benchmark("statement", line, 200);
+	}
+
+	private void benchmark(String name, String line, int iterations) {
+		LineLexer.Token token = new LineLexer.Token();
+
+		// Warmup and sanity check
+		for (int i = 0; i < iterations; i++) {
+			Matcher statement = regexBlocks.matcher(line);
+			Matcher pattern = regexPatterns.matcher(line);
+			lexer.lex(line, token);
+			assertEquals(statement.find() ? statement.group(2) : null, token.getVersion(line));
+			assertEquals(pattern.find() ? pattern.group(1) : null, token.getPatterns(line));
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			regexBlocks.matcher(line).find();
+			regexPatterns.matcher(line).find();
+		}
+		long regexTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			lexer.lex(line, token);
+		}
+		long lexerTime = System.nanoTime() - start;
+
+		System.out.println(String.format("[%s] %s chars, %s iterations: regex %.3f ms, lexer %.3f ms", name, line.length(), iterations, regexTime / 1e6, lexerTime / 1e6));
+	}
+}
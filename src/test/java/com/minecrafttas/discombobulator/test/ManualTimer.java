@@ -0,0 +1,91 @@
+package com.minecrafttas.discombobulator.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import com.minecrafttas.discombobulator.utils.Debouncer;
+
+/**
+ * A timer whose time only passes when the test advances it. The due jobs run on the thread of the test, so the jobs a debouncer hands to its workers are known once {@link #advance(long)} returns
+ */
+class ManualTimer implements Debouncer.Timer {
+
+	private long now;
+
+	/**
+	 * The jobs that didn't run yet, in the order they were scheduled
+	 */
+	private final List<Scheduled> scheduled = new ArrayList<>();
+
+	@Override
+	public synchronized long nanoTime() {
+		return now;
+	}
+
+	@Override
+	public synchronized Future<?> schedule(Runnable job, long delay) {
+		FutureTask<Void> task = new FutureTask<>(job, null);
+		scheduled.add(new Scheduled(now + delay, task));
+		return task;
+	}
+
+	/**
+	 * Lets the time pass, running the jobs that are due in the order of their due time
+	 * @param millis The time to pass, in milliseconds
+	 * @return The number of jobs that ran, cancelled jobs are not counted
+	 */
+	public int advance(long millis) {
+		long target;
+		synchronized (this) {
+			target = now + TimeUnit.MILLISECONDS.toNanos(millis);
+		}
+		int count = 0;
+		Scheduled next;
+		while ((next = poll(target)) != null) {
+			if (next.task.isCancelled())
+				continue;
+			next.task.run();	// Outside of the lock, the job may schedule new jobs
+			count++;
+		}
+		synchronized (this) {
+			now = target;
+		}
+		return count;
+	}
+
+	/**
+	 * Removes the job that is due first and moves the time to its due time
+	 * @param target The latest due time
+	 * @return The job or null if no job is due until the target
+	 */
+	private synchronized Scheduled poll(long target) {
+		Scheduled first = null;
+		for (Scheduled job : scheduled) {
+			if (job.time <= target && (first == null || job.time < first.time))
+				first = job;
+		}
+		if (first == null)
+			return null;
+		scheduled.remove(first);
+		now = first.time;
+		return first;
+	}
+
+	@Override
+	public synchronized void close() {
+		scheduled.clear();
+	}
+
+	private static class Scheduled {
+		private final long time;
+		private final FutureTask<Void> task;
+
+		private Scheduled(long time, FutureTask<Void> task) {
+			this.time = time;
+			this.task = task;
+		}
+	}
+}
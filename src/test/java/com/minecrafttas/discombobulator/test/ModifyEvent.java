@@ -0,0 +1,23 @@
+package com.minecrafttas.discombobulator.test;
+
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+
+/**
+ * A modify event of a file
+ */
+class ModifyEvent implements WatchEvent<Path> {
+
+	private final Path context;
+
+	public ModifyEvent(Path context) {
+		this.context = context;
+	}
+
+	// @formatter:off
+	@Override public Kind<Path> kind() { return StandardWatchEventKinds.ENTRY_MODIFY; }
+	@Override public int count() { return 1; }
+	@Override public Path context() { return context; }
+	// @formatter:on
+}
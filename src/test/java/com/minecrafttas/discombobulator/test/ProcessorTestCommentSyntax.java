@@ -0,0 +1,83 @@
+package com.minecrafttas.discombobulator.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.gradle.internal.impldep.org.apache.commons.compress.utils.FileNameUtils;
+import org.junit.jupiter.api.Test;
+
+import com.minecrafttas.discombobulator.Processor;
+import com.minecrafttas.discombobulator.processor.CommentRegistry;
+import com.minecrafttas.discombobulator.processor.VersionCatalog;
+import com.minecrafttas.discombobulator.utils.Pair;
+
+class ProcessorTestCommentSyntax extends TestBase {
+
+	private VersionCatalog allVersions = new VersionCatalog(Arrays.asList(
+			"1.20.0",
+			"1.16.1",
+			"1.14.4"
+	));
+
+	private Processor processor = new Processor(allVersions, null, false, Map.of(".properties", "#"));
+
+	/**
+	 * Properties file with # registered as comment syntax
+	 * TargetVersion: 1.20.0, 1.14.4 and Null
+	 * Expected: 1.16.1, 1.14.4 and None
+	 * @throws Exception
+	 */
+	@Test
+	void testRegisteredSyntax() throws Exception {
+		String folder = "TestCommentSyntax";
+		String actualName = "test.properties";
+
+		Pair<List<String>, List<String>> lines = getLines(folder, actualName, null);
+		Map<String, List<String>> linesActual = processor.preprocessAll(lines.left(), actualName, FileNameUtils.getExtension(actualName));
+
+		assertEquals(String.join("\n", getLines(folder, null, "Expected1.16.1.txt").right()), String.join("\n", linesActual.get("1.20.0")));
+		assertEquals(String.join("\n", getLines(folder, null, "Expected1.14.4.txt").right()), String.join("\n", linesActual.get("1.14.4")));
+		assertEquals(String.join("\n", getLines(folder, null, "ExpectedNone.txt").right()), String.join("\n", linesActual.get(null)));
+	}
+
+	/**
+	 * Properties file without a registered comment syntax
+	 * TargetVersion: 1.20.0
+	 * Expected: Unchanged, the statements are not found
+	 * @throws Exception
+	 */
+	@Test
+	void testUnregisteredSyntax() throws Exception {
+		String folder = "TestCommentSyntax";
+		String actualName = "test.properties";
+
+		Pair<List<String>, List<String>> lines = getLines(folder, actualName, null);
+		List<String> linesActual = new Processor(allVersions, null, false).preprocess("1.20.0", lines.left(), actualName, FileNameUtils.getExtension(actualName));
+
+		assertEquals(lines.left(), linesActual);
+	}
+
+	/**
+	 * Registering, overriding the built-in access widener syntax and an empty syntax
+	 * Expected: The lexer of the syntax, shared between endings, and an error for the empty syntax
+	 */
+	@Test
+	void testRegistry() {
+		CommentRegistry registry = new CommentRegistry(Map.of("toml", "#", ".accesswidener", "//", "lua", "--"));
+
+		assertEquals("#", registry.getLexer("toml").getCommentChars());
+		assertEquals("--$$", registry.getLexer("lua").getDisabledPrefix());
+		assertEquals("//", registry.getLexer("java").getCommentChars());
+		assertEquals("//", registry.getLexer(null).getCommentChars());
+		assertSame(registry.getLexer("java"), registry.getLexer("accesswidener"));
+		assertEquals("#", new CommentRegistry().getLexer("accesswidener").getCommentChars());
+
+		IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+			new CommentRegistry(Map.of("toml", ""));
+		});
+		assertEquals("The comment syntax for toml can't be empty", exception.getMessage());
+	}
+}
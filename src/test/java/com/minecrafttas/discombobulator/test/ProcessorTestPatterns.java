@@ -3,6 +3,7 @@ package com.minecrafttas.discombobulator.test;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -123,6 +124,50 @@ class ProcessorTestPatterns extends TestBase{
 		assertEquals(expected, actual);
 	}
 	
+	/**
+	 * TargetVersion: 1.14.4
+	 * Expected: 1.14.4, even if the first pattern in the line is already correct
+	 * @throws Exception
+	 */
+	@Test
+	void testMultiplePatterns1() throws Exception {
+		String folder = "TestPatternMultiple";
+		String actualName = "Actual.java";
+		String expectedName = "Expected1.14.4.txt";
+		String targetVersion = "1.14.4";
+		
+		Pair<List<String>, List<String>> lines = getLines(folder, actualName, expectedName);
+		
+		List<String> linesActual = processor.preprocess(targetVersion, lines.left(), actualName, FileNameUtils.getExtension(actualName));
+		
+		String actual = String.join("\n", linesActual);
+		String expected = String.join("\n", lines.right());
+		
+		assertEquals(expected, actual);
+	}
+	
+	/**
+	 * TargetVersion: 1.12.2
+	 * Expected: 1.12.2, even if the first pattern in the line is already correct
+	 * @throws Exception
+	 */
+	@Test
+	void testMultiplePatterns2() throws Exception {
+		String folder = "TestPatternMultiple";
+		String actualName = "Actual.java";
+		String expectedName = "Expected1.12.2.txt";
+		String targetVersion = "1.12.2";
+		
+		Pair<List<String>, List<String>> lines = getLines(folder, actualName, expectedName);
+		
+		List<String> linesActual = processor.preprocess(targetVersion, lines.left(), actualName, FileNameUtils.getExtension(actualName));
+		
+		String actual = String.join("\n", linesActual);
+		String expected = String.join("\n", lines.right());
+		
+		assertEquals(expected, actual);
+	}
+	
 	/**
 	 * TargetVersion: 1.14.2
 	 * Expected: Fail
@@ -141,7 +186,119 @@ class ProcessorTestPatterns extends TestBase{
 			processor.preprocess(targetVersion, lines.left(), actualName, FileNameUtils.getExtension(actualName));
 		});
 
-		assertEquals("The specified pattern  GetMinecraft , GetLevel in Actual3.java in line 		Minecraft.getInstance(); // @ GetMinecraft , GetLevel; was not found for any version", exception.getMessage());
+		assertEquals("The specified pattern  GetMinecraft , GetLevel in Actual3.java in line 13 was not found for any version", exception.getMessage());
+	}
+	
+	/**
+	 * Pattern with a version that is not in the versions
+	 * Expected: Fail when creating the processor
+	 */
+	@Test
+	void testPatternUnknownVersion() {
+		Map<String, Map<String, String>> unknownPatterns = Map.of(
+				"GetLevel", Map.of(
+					"1.14.2", "level",
+					"def", "world"
+				)
+			);
+		
+		RuntimeException exception = assertThrows(RuntimeException.class, () -> {
+			new Processor(allVersions, unknownPatterns);
+		});
+		
+		assertEquals("The version 1.14.2 in pattern GetLevel was not found", exception.getMessage());
+	}
+	
+	/**
+	 * Pattern without a def, that doesn't cover the lowest version
+	 * Expected: Fail when creating the processor
+	 */
+	@Test
+	void testPatternMissingDef() {
+		Map<String, Map<String, String>> missingPatterns = Map.of(
+				"GetLevel", Map.of(
+					"1.14.4", "level"
+				)
+			);
+		
+		RuntimeException exception = assertThrows(RuntimeException.class, () -> {
+			new Processor(allVersions, missingPatterns);
+		});
+		
+		assertEquals("The pattern GetLevel has no replacement for version 1.13.2. Add a \"def\" replacement to the pattern", exception.getMessage());
+	}
+	
+	/**
+	 * Pattern without a def, that defines the lowest version
+	 * Expected: No fail
+	 */
+	@Test
+	void testPatternWithoutDef() throws Exception {
+		Map<String, Map<String, String>> lowestPatterns = Map.of(
+				"GetLevel", Map.of(
+					"1.14.4", "level",
+					"1.11.2", "world"
+				),
+				"GetMinecraft", Map.of(
+					"1.14.4", "Minecraft.getInstance()",
+					"1.11.2", "Minecraft.getMinecraft()"
+				)
+			);
+		
+		Processor lowestProcessor = new Processor(allVersions, lowestPatterns);
+		
+		String folder = "TestPattern";
+		String actualName = "Actual.java";
+		String expectedName = "Expected1.12.2.txt";
+		String targetVersion = "1.12.2";
+		
+		Pair<List<String>, List<String>> lines = getLines(folder, actualName, expectedName);
+		
+		List<String> linesActual = lowestProcessor.preprocess(targetVersion, lines.left(), actualName, FileNameUtils.getExtension(actualName));
+		
+		assertEquals(String.join("\n", lines.right()), String.join("\n", linesActual));
+	}
+	
+	/**
+	 * TargetVersion: All
+	 * Expected: Versions with the same replacements share the output, which is the same as preprocessing them one by one
+	 * @throws Exception
+	 */
+	@Test
+	void testPatternEquivalentVersions() throws Exception {
+		String folder = "TestPattern";
+		String actualName = "Actual.java";
+		
+		List<String> lines = getLines(folder, actualName, null).left();
+		Map<String, List<String>> linesActual = processor.preprocessAll(lines, actualName, FileNameUtils.getExtension(actualName));
+		
+		assertSame(linesActual.get("1.15.2"), linesActual.get("1.14.4"));
+		assertSame(linesActual.get("1.13.2"), linesActual.get("1.11.2"));
+		assertNotSame(linesActual.get("1.14.4"), linesActual.get("1.13.2"));
+		
+		for (Map.Entry<String, List<String>> entry : linesActual.entrySet()) {
+			assertEquals(processor.preprocess(entry.getKey(), lines, actualName, FileNameUtils.getExtension(actualName)), entry.getValue());
+		}
+	}
+	
+	/**
+	 * Line: Two values of the same pattern, the later one in the line coming first in the pattern
+	 * Expected: The value that comes first in the pattern is replaced
+	 * @throws Exception
+	 */
+	@Test
+	void testPatternValueOrder() throws Exception {
+		Map<String, String> getWindow = new LinkedHashMap<>();
+		getWindow.put("1.15.2", "getWindow()");
+		getWindow.put("1.14.4", "mainWindow");
+		getWindow.put("def", "window");
+		Processor orderProcessor = new Processor(allVersions, Map.of("GetWindow", getWindow));
+		
+		List<String> lines = Arrays.asList("mc.window.setSize(mc.mainWindow); // @GetWindow;");
+		
+		List<String> linesActual = orderProcessor.preprocess("1.15.2", lines, "Actual.java", "java");
+		
+		assertEquals(Arrays.asList("mc.window.setSize(mc.getWindow()); // @GetWindow;"), linesActual);
 	}
 
 }
@@ -0,0 +1,189 @@
+package com.minecrafttas.discombobulator.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.gradle.internal.impldep.org.apache.commons.compress.utils.FileNameUtils;
+import org.junit.jupiter.api.Test;
+
+import com.minecrafttas.discombobulator.Processor;
+import com.minecrafttas.discombobulator.utils.FileManifest;
+import com.minecrafttas.discombobulator.utils.Pair;
+
+class ProcessorTestPreprocessAll extends TestBase {
+
+	private List<String> allVersions = Arrays.asList(
+			"1.20.0",
+			"1.19.3",
+			"1.19.2",
+			"1.19.0",
+			"1.18.2",
+			"1.18.1",
+			"1.17.1",
+			"1.16.5",
+			"1.16.1",
+			"infinity",
+			"1.15.2",
+			"1.14.4"
+	);
+
+	private Processor processor=new Processor(allVersions, null);
+
+	/**
+	 * TargetVersion: All
+	 * Expected: 1.18.1, 1.16.1, 1.14.1 and None
+	 * @throws Exception
+	 */
+	@Test
+	void testAllVersions() throws Exception {
+		String folder = "TestVersion";
+		String actualName = "Actual.java";
+
+		Pair<List<String>, List<String>> lines = getLines(folder, actualName, null);
+
+		Map<String, List<String>> linesActual = processor.preprocessAll(lines.left(), actualName, FileNameUtils.getExtension(actualName));
+
+		assertEquals(allVersions.size()+1, linesActual.size());
+
+		assertEquals(String.join("\n", getLines(folder, null, "Expected1.18.1.txt").right()), String.join("\n", linesActual.get("1.18.1")));
+		assertEquals(String.join("\n", getLines(folder, null, "Expected1.16.1.txt").right()), String.join("\n", linesActual.get("1.16.5")));
+		assertEquals(String.join("\n", getLines(folder, null, "Expected1.14.1.txt").right()), String.join("\n", linesActual.get("infinity")));
+		assertEquals(String.join("\n", getLines(folder, null, "Expected1.14.1.txt").right()), String.join("\n", linesActual.get("1.14.4")));
+		assertEquals(String.join("\n", getLines(folder, null, "ExpectedNone.txt").right()), String.join("\n", linesActual.get(null)));
+	}
+
+	/**
+	 * TargetVersion: All
+	 * Expected: The same as preprocessing every version on it's own
+	 * @throws Exception
+	 */
+	@Test
+	void testAllVersionsNested() throws Exception {
+		String folder = "TestOrdering/verynested";
+		String actualName = "Actual.java";
+
+		Pair<List<String>, List<String>> lines = getLines(folder, actualName, null);
+
+		Map<String, List<String>> linesActual = processor.preprocessAll(lines.left(), actualName, FileNameUtils.getExtension(actualName));
+
+		for (String targetVersion : allVersions) {
+			List<String> linesExpected = processor.preprocess(targetVersion, lines.left(), actualName, FileNameUtils.getExtension(actualName));
+			assertEquals(String.join("\n", linesExpected), String.join("\n", linesActual.get(targetVersion)));
+		}
+		List<String> linesExpected = processor.preprocess(null, lines.left(), actualName, FileNameUtils.getExtension(actualName));
+		assertEquals(String.join("\n", linesExpected), String.join("\n", linesActual.get(null)));
+	}
+
+	/**
+	 * TargetVersion: All
+	 * Expected: Fail
+	 * @throws Exception
+	 */
+	@Test
+	void testAllVersionsFail() throws Exception {
+		String folder = "TestVersionFail";
+		String actualName = "Actual3.java";
+
+		Pair<List<String>, List<String>> lines = getLines(folder, actualName, null);
+
+		Exception exception = assertThrows(Exception.class, () -> {
+			processor.preprocessAll(lines.left(), actualName, FileNameUtils.getExtension(actualName));
+		});
+
+		assertEquals("Duplicate version definition 1.16.1 found in line 8 in Actual3.java", exception.getMessage());
+	}
+	
+	/**
+	 * TargetVersion: All
+	 * Expected: Versions without a block between them share the output, which is the same as preprocessing them one by one
+	 * @throws Exception
+	 */
+	@Test
+	void testEquivalentVersions() throws Exception {
+		String folder = "TestVersion";
+		String actualName = "Actual.java";
+
+		List<String> lines = getLines(folder, actualName, null).left();
+		Map<String, List<String>> linesActual = processor.preprocessAll(lines, actualName, FileNameUtils.getExtension(actualName));
+
+		assertSame(linesActual.get("1.20.0"), linesActual.get("1.18.1"));
+		assertSame(linesActual.get("infinity"), linesActual.get("1.14.4"));
+		assertNotSame(linesActual.get("1.18.1"), linesActual.get("1.16.5"));
+		assertNotSame(linesActual.get("1.14.4"), linesActual.get(null));
+
+		for (Map.Entry<String, List<String>> entry : linesActual.entrySet()) {
+			assertEquals(processor.preprocess(entry.getKey(), lines, actualName, FileNameUtils.getExtension(actualName)), entry.getValue());
+		}
+	}
+
+	/**
+	 * TargetVersion: All, twice with the hash of the file
+	 * Expected: The same as preprocessing without the hash
+	 * @throws Exception
+	 */
+	@Test
+	void testAllVersionsCached() throws Exception {
+		String folder = "TestOrdering/verynested";
+		String actualName = "Actual.java";
+
+		List<String> lines = getLines(folder, actualName, null).left();
+		String hash = FileManifest.hash(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+		Map<String, List<String>> expected = processor.preprocessAll(lines, actualName, FileNameUtils.getExtension(actualName));
+
+		assertEquals(expected, processor.preprocessAll(lines, actualName, FileNameUtils.getExtension(actualName), hash));
+		assertEquals(expected, processor.preprocessAll(lines, actualName, FileNameUtils.getExtension(actualName), hash));
+	}
+
+	/**
+	 * TargetVersion: All, on multiple threads with the same processor
+	 * Expected: The same as preprocessing every file one after another
+	 * @throws Exception
+	 */
+	@Test
+	void testAllVersionsConcurrent() throws Exception {
+		String folder = "TestOrdering/verynested";
+		String actualName = "Actual.java";
+		
+		Pair<List<String>, List<String>> lines = getLines(folder, actualName, null);
+		
+		Map<String, List<String>> expected = processor.preprocessAll(lines.left(), actualName, FileNameUtils.getExtension(actualName));
+		
+		List<List<String>> files = new ArrayList<>();
+		for (int i = 0; i < 64; i++) {
+			List<String> file = new ArrayList<>(lines.left());
+			file.add("// File " + i);	// Every file is different, so a file ending up with the output of another thread fails
+			files.add(file);
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Map<String, List<String>>>> futures = new ArrayList<>();
+			for (int i = 0; i < files.size(); i++) {
+				List<String> file = files.get(i);
+				String filename = actualName + i;
+				futures.add(executor.submit(() -> processor.preprocessAll(file, filename, FileNameUtils.getExtension(actualName))));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				Map<String, List<String>> actual = futures.get(i).get();
+				for (String targetVersion : expected.keySet()) {
+					List<String> expectedLines = new ArrayList<>(expected.get(targetVersion));
+					expectedLines.add("// File " + i);
+					assertEquals(String.join("\n", expectedLines), String.join("\n", actual.get(targetVersion)));
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package com.minecrafttas.discombobulator.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gradle.internal.impldep.org.apache.commons.compress.utils.FileNameUtils;
+import org.junit.jupiter.api.Test;
+
+import com.minecrafttas.discombobulator.Processor;
+import com.minecrafttas.discombobulator.utils.FileClassifier;
+import com.minecrafttas.discombobulator.utils.FileManifest;
+
+class ProcessorTestStreaming extends TestBase {
+
+	private List<String> allVersions = Arrays.asList(
+			"1.20.0",
+			"1.19.3",
+			"1.18.2",
+			"1.18.1",
+			"1.17.1",
+			"1.16.5",
+			"1.16.1",
+			"1.15.2",
+			"1.14.4"
+	);
+
+	private Processor processor = new Processor(allVersions, Map.of(
+			"GetLevel", Map.of(
+				"1.16.1", "level",
+				"def", "world"
+			)
+		));
+
+	/**
+	 * Streams the lines through the processor
+	 * @return The output of every version, with the base version under null
+	 */
+	private Map<String, String> stream(List<String> lines, String filename) throws Exception {
+		return stream(lines, filename, null);
+	}
+
+	/**
+	 * Streams the lines through the processor, cached by the hash
+	 * @return The output of every version, with the base version under null
+	 */
+	private Map<String, String> stream(List<String> lines, String filename, String hash) throws Exception {
+		Map<String, ByteArrayOutputStream> outputs = new LinkedHashMap<>();
+		for (String version : allVersions) {
+			outputs.put(version, new ByteArrayOutputStream());
+		}
+		outputs.put(null, new ByteArrayOutputStream());
+
+		String content = String.join("\n", lines) + "\n";
+		processor.preprocessAll(new StringReader(content), new LinkedHashMap<>(outputs), filename, FileNameUtils.getExtension(filename), hash);
+
+		Map<String, String> out = new LinkedHashMap<>();
+		for (Map.Entry<String, ByteArrayOutputStream> output : outputs.entrySet()) {
+			out.put(output.getKey(), output.getValue().toString(StandardCharsets.UTF_8));
+		}
+		return out;
+	}
+
+	/**
+	 * Joins the lines like the streaming processor writes them
+	 */
+	private String join(List<String> lines) {
+		StringBuilder builder = new StringBuilder();
+		for (String line : lines) {
+			builder.append(line).append(System.lineSeparator());
+		}
+		return builder.toString();
+	}
+
+	private void assertSameAsLists(List<String> lines, String filename) throws Exception {
+		Map<String, List<String>> expected = processor.preprocessAll(lines, filename, FileNameUtils.getExtension(filename));
+		Map<String, String> actual = stream(lines, filename);
+
+		assertEquals(expected.keySet(), actual.keySet());
+		for (Map.Entry<String, List<String>> entry : expected.entrySet()) {
+			assertEquals(join(entry.getValue()), actual.get(entry.getKey()), entry.getKey());
+		}
+	}
+
+	/**
+	 * Files: Version blocks, nested version blocks and access wideners
+	 * Expected: The same as preprocessing the whole file
+	 * @throws Exception
+	 */
+	@Test
+	void testSameAsLists() throws Exception {
+		assertSameAsLists(getLines("TestVersion", "Actual.java", null).left(), "Actual.java");
+		assertSameAsLists(getLines("TestNesting/triplenesting", "Actual.java", null).left(), "Actual.java");
+		assertSameAsLists(getLines("TestAccesswidener", "test.accesswidener", null).left(), "test.accesswidener");
+	}
+
+	/**
+	 * File: Thousands of lines with version blocks and patterns in between
+	 * Expected: The same as preprocessing the whole file
+	 * @throws Exception
+	 */
+	@Test
+	void testLargeFile() throws Exception {
+		assertSameAsLists(createLargeFile(), "Large.java");
+	}
+
+	/**
+	 * File: Thousands of lines with version blocks, streamed twice with the hash of the file
+	 * Expected: The same as streaming without the hash, the second time from the cache
+	 * @throws Exception
+	 */
+	@Test
+	void testCached() throws Exception {
+		List<String> lines = createLargeFile();
+		String hash = FileManifest.hash((String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+
+		Map<String, String> expected = stream(lines, "Large.java");
+		assertEquals(expected, stream(lines, "Large.java", hash));
+		assertEquals(expected, stream(lines, "Large.java", hash));
+	}
+
+	/**
+	 * @return Thousands of lines with version blocks and patterns in between
+	 */
+	private List<String> createLargeFile() {
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			lines.add("int field" + i + ";");
+			lines.add("//$$int disabled" + i + ";");
+			if (i % 7 == 0) {
+				lines.add("//# 1.16.1");
+				lines.add("//$$mc.level.tick(" + i + ");	// @GetLevel;");
+				lines.add("//## 1.18.1");
+				lines.add("//$$int nested" + i + ";");
+				lines.add("//## end");
+				lines.add("//# def");
+				lines.add("mc.world.tick(" + i + ");	// @GetLevel;");
+				lines.add("//# end");
+			}
+			lines.add("mc.world = null;	// @GetLevel;");
+		}
+		return lines;
+	}
+
+	/**
+	 * File: A duplicate version after a valid version block list
+	 * Expected: Fail with the line in the whole file
+	 * @throws Exception
+	 */
+	@Test
+	void testErrorLine() throws Exception {
+		List<String> lines = new ArrayList<>(Arrays.asList(
+				"//# 1.16.1",
+				"//# end",
+				"int i;",
+				"//# 1.16.1",
+				"//# 1.16.1",
+				"//# end"
+		));
+
+		Exception exception = assertThrows(Exception.class, () -> {
+			stream(lines, "Actual.java");
+		});
+		assertEquals("Duplicate version definition 1.16.1 found in line 5 in Actual.java", exception.getMessage());
+
+		exception = assertThrows(Exception.class, () -> {
+			processor.preprocessAll(lines, "Actual.java", "java");
+		});
+		assertEquals("Duplicate version definition 1.16.1 found in line 5 in Actual.java", exception.getMessage());
+	}
+
+	/**
+	 * File: Disabled lines that contain the disabled marker again further in the line
+	 * Expected: Only the leading marker is removed or added
+	 * @throws Exception
+	 */
+	@Test
+	void testMarkerInLine() throws Exception {
+		List<String> lines = Arrays.asList(
+				"//# 1.16.1",
+				"//$$String marker = \"//$$\";",
+				"//# def",
+				"String marker = \"//$$\";",
+				"//# end"
+		);
+
+		Map<String, String> actual = stream(lines, "Actual.java");
+		assertEquals(join(Arrays.asList(
+				"//# 1.16.1",
+				"String marker = \"//$$\";",
+				"//# def",
+				"//$$String marker = \"//$$\";",
+				"//# end"
+		)), actual.get("1.16.1"));
+		assertEquals(join(lines), actual.get("1.14.4"));
+		assertSameAsLists(lines, "Actual.java");
+	}
+
+	/**
+	 * File: Version statements and one byte that is not valid UTF-8
+	 * Expected: The file is not binary, has markers and fails with the filename
+	 * @throws Exception
+	 */
+	@Test
+	void testInvalidUtf8() throws Exception {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		content.write("//# 1.16.1\n//$$int i;\n//# def\nString s = \"".getBytes(StandardCharsets.UTF_8));
+		content.write(0xC3);
+		content.write("\";\n//# end\n".getBytes(StandardCharsets.UTF_8));
+		byte[] bytes = content.toByteArray();
+
+		assertFalse(FileClassifier.isBinary(bytes));
+		assertTrue(processor.containsMarkers(bytes, "java"));
+
+		Map<String, OutputStream> outputs = new LinkedHashMap<>();
+		outputs.put(null, new ByteArrayOutputStream());
+		Exception exception = assertThrows(IOException.class, () -> {
+			processor.preprocessAll(Channels.newChannel(new ByteArrayInputStream(bytes)), outputs, "Actual.java", "java", null);
+		});
+		assertEquals("Could not preprocess Actual.java, it is not valid UTF-8", exception.getMessage());
+	}
+}
@@ -0,0 +1,29 @@
+package com.minecrafttas.discombobulator.test;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.Watchable;
+import java.util.List;
+
+/**
+ * A watch key with prepared events, like the ones the watch service returns
+ */
+class ReplayKey implements WatchKey {
+
+	private final Path dir;
+	private final List<WatchEvent<?>> events;
+
+	public ReplayKey(Path dir, List<WatchEvent<?>> events) {
+		this.dir = dir;
+		this.events = events;
+	}
+
+	// @formatter:off
+	@Override public boolean isValid() { return true; }
+	@Override public List<WatchEvent<?>> pollEvents() { return events; }
+	@Override public boolean reset() { return true; }
+	@Override public void cancel() { }
+	@Override public Watchable watchable() { return dir; }
+	// @formatter:on
+}
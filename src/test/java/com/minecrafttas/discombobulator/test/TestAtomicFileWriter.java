@@ -0,0 +1,114 @@
+package com.minecrafttas.discombobulator.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import com.minecrafttas.discombobulator.utils.AtomicFileWriter;
+import com.minecrafttas.discombobulator.utils.AtomicFileWriter.SyncPolicy;
+import com.minecrafttas.discombobulator.utils.FileManifest;
+
+class TestAtomicFileWriter {
+
+	/**
+	 * @return The names of all files in the directory
+	 */
+	private List<String> list(Path dir) throws Exception {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.map(file -> file.getFileName().toString()).sorted().toList();
+		}
+	}
+
+	/**
+	 * Replacing a longer file with a shorter one
+	 * Expected: Only the new content, no temporary file left
+	 * @throws Exception
+	 */
+	@Test
+	void testReplace() throws Exception {
+		Path dir = Files.createTempDirectory("discombobulator");
+		Path file = dir.resolve("Example.java");
+		Files.writeString(file, "a".repeat(1000));
+
+		try (AtomicFileWriter writer = new AtomicFileWriter(SyncPolicy.ALWAYS)) {
+			writer.write(file, "class Example {}".getBytes(StandardCharsets.UTF_8));
+		}
+
+		assertEquals("class Example {}", Files.readString(file));
+		assertEquals(Arrays.asList("Example.java"), list(dir));
+	}
+
+	/**
+	 * Group commit, once committed and once closed without commit
+	 * Expected: Files are only replaced on commit, temporary files are deleted on close
+	 * @throws Exception
+	 */
+	@Test
+	void testGroupCommit() throws Exception {
+		Path dir = Files.createTempDirectory("discombobulator");
+		Path first = dir.resolve("First.java");
+		Path second = dir.resolve("Second.java");
+		Files.writeString(first, "old");
+
+		try (AtomicFileWriter writer = new AtomicFileWriter(SyncPolicy.GROUP)) {
+			writer.write(first, "new".getBytes(StandardCharsets.UTF_8));
+			writer.write(second, "new".getBytes(StandardCharsets.UTF_8));
+
+			assertEquals("old", Files.readString(first));
+			assertFalse(Files.exists(second));
+			assertTrue(AtomicFileWriter.isTempFile(dir.resolve(list(dir).get(0))));
+
+			writer.commit();
+		}
+		assertEquals("new", Files.readString(first));
+		assertEquals("new", Files.readString(second));
+		assertEquals(Arrays.asList("First.java", "Second.java"), list(dir));
+
+		try (AtomicFileWriter writer = new AtomicFileWriter(SyncPolicy.GROUP)) {
+			writer.write(first, "discarded".getBytes(StandardCharsets.UTF_8));
+		}
+		assertEquals("new", Files.readString(first));
+		assertEquals(Arrays.asList("First.java", "Second.java"), list(dir));
+	}
+
+	/**
+	 * Streaming two files with the policy none, discarding one of them
+	 * Expected: Only the other file is replaced on commit, its hash is the same as the hash of its content
+	 * @throws Exception
+	 */
+	@Test
+	void testOpen() throws Exception {
+		Path dir = Files.createTempDirectory("discombobulator");
+		Path first = dir.resolve("First.java");
+		Path second = dir.resolve("Second.java");
+		Files.writeString(second, "old");
+		String content = "class First {}\n".repeat(1000);
+
+		try (AtomicFileWriter writer = new AtomicFileWriter(SyncPolicy.NONE)) {
+			AtomicFileWriter.PendingFile firstFile = writer.open(first);
+			AtomicFileWriter.PendingFile secondFile = writer.open(second);
+			try (firstFile) {
+				firstFile.write(content.getBytes(StandardCharsets.UTF_8));
+			}
+			secondFile.write("new".getBytes(StandardCharsets.UTF_8));
+			secondFile.close();
+
+			assertFalse(Files.exists(first));
+			assertEquals(content, Files.readString(firstFile.getTempFile()));
+			assertEquals(FileManifest.hash(content.getBytes(StandardCharsets.UTF_8)), firstFile.getHash());
+
+			secondFile.discard();
+			writer.commit();
+		}
+		assertEquals(content, Files.readString(first));
+		assertEquals("old", Files.readString(second));
+		assertEquals(Arrays.asList("First.java", "Second.java"), list(dir));
+	}
+}
@@ -0,0 +1,130 @@
+package com.minecrafttas.discombobulator.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.minecrafttas.discombobulator.utils.Debouncer;
+
+class TestDebouncer {
+
+	/**
+	 * A file saved 10 times with 50 ms between the saves and another file saved once, with a quiet period of 100 ms
+	 * Expected: One job per file once its events stopped for the quiet period, the one of the last save
+	 * @throws Exception
+	 */
+	@Test
+	void testBurst() throws Exception {
+		List<String> runs = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch done = new CountDownLatch(2);
+		ManualTimer timer = new ManualTimer();
+		try (Debouncer debouncer = new Debouncer(100, 5000, 1, timer)) {
+			for (int i = 0; i < 10; i++) {
+				String job = "First " + i;
+				debouncer.schedule(Path.of("First.java"), () -> {
+					runs.add(job);
+					done.countDown();
+				});
+				assertEquals(0, timer.advance(50));
+			}
+			debouncer.schedule(Path.of("Second.java"), () -> {
+				runs.add("Second");
+				done.countDown();
+			});
+			assertEquals(2, debouncer.getPendingCount());
+
+			assertEquals(1, timer.advance(50));	// 100 ms after the last save of the first file
+			assertEquals(1, timer.advance(50));
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+		}
+		assertEquals(Arrays.asList("First 9", "Second"), runs);
+	}
+
+	/**
+	 * Events for one file every 20 ms for 1 second, with a quiet period of 100 ms and a maximum delay of 300 ms
+	 * Expected: The job runs every 300 ms with the last event before it, although the events never stop for the quiet period
+	 * @throws Exception
+	 */
+	@Test
+	void testMaxDelay() throws Exception {
+		List<Integer> runs = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch done = new CountDownLatch(4);
+		ManualTimer timer = new ManualTimer();
+		int count = 0;
+		try (Debouncer debouncer = new Debouncer(100, 300, 1, timer)) {
+			for (int time = 0; time < 1000; time += 20) {
+				int event = time;
+				debouncer.schedule(Path.of("Example.java"), () -> {
+					runs.add(event);
+					done.countDown();
+				});
+				count += timer.advance(20);
+			}
+			count += timer.advance(100);
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+		}
+		assertEquals(4, count);
+		assertEquals(Arrays.asList(280, 580, 880, 980), runs);
+	}
+
+	/**
+	 * The same file saved in two versions, with the path in the version as key, on 4 threads
+	 * Expected: Both jobs run in the order of their events, the second one after the first one finished
+	 * @throws Exception
+	 */
+	@Test
+	void testSameKey() throws Exception {
+		List<String> runs = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(2);
+		ManualTimer timer = new ManualTimer();
+		try (Debouncer debouncer = new Debouncer(10, 100, 4, timer)) {
+			Path order = Path.of("com/minecrafttas/Example.java");
+			for (String version : new String[] { "1.14.4", "1.16.1" }) {
+				debouncer.schedule(Path.of(version).resolve(order), order, () -> {
+					maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+					runs.add(version);
+					started.countDown();
+					try {
+						release.await(10, TimeUnit.SECONDS);	// The second job would start now if it didn't wait for this one
+					} catch (InterruptedException e) {
+					}
+					running.decrementAndGet();
+					done.countDown();
+				});
+			}
+			assertEquals(2, timer.advance(10));
+
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+			assertEquals(Arrays.asList("1.14.4"), runs);
+			release.countDown();
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+		}
+		assertEquals(Arrays.asList("1.14.4", "1.16.1"), runs);
+		assertEquals(1, maxRunning.get());
+	}
+
+	/**
+	 * A quiet period longer than the maximum delay
+	 * Expected: Fail
+	 */
+	@Test
+	void testInvalid() {
+		Exception exception = assertThrows(IllegalArgumentException.class, () -> {
+			new Debouncer(500, 100);
+		});
+		assertEquals("The quiet period of 500 ms can't be negative or longer than the maximum delay of 100 ms", exception.getMessage());
+	}
+}
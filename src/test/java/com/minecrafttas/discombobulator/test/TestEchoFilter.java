@@ -0,0 +1,55 @@
+package com.minecrafttas.discombobulator.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+import com.minecrafttas.discombobulator.EchoFilter;
+import com.minecrafttas.discombobulator.utils.FileManifest;
+
+class TestEchoFilter {
+
+	private final byte[] written = "class Example {}".getBytes(StandardCharsets.UTF_8);
+	private final byte[] edited = "class Example { int i; }".getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * Events of a written file, with the written content, the same content again and an edit right after
+	 * Expected: Only the edit is not an echo
+	 */
+	@Test
+	void testEcho() {
+		EchoFilter filter = new EchoFilter();
+		Path path = Path.of("1.14.4/src/Example.java").toAbsolutePath();
+		Path other = Path.of("1.12.2/src/Example.java").toAbsolutePath();
+		filter.expect(path, FileManifest.hash(written));
+
+		assertTrue(filter.isEcho(path, written));
+		assertTrue(filter.isEcho(path, written));
+		assertFalse(filter.isEcho(other, written));
+		assertFalse(filter.isEcho(path, edited));
+		assertFalse(filter.isEcho(path, written));	// Forgotten after the edit
+	}
+
+	/**
+	 * More written files than slots
+	 * Expected: The number of remembered files stays bounded, the last written file is still recognized
+	 */
+	@Test
+	void testBounded() {
+		EchoFilter filter = new EchoFilter(16);
+		for (int i = 0; i < 1000; i++) {
+			filter.expect(Path.of("Example" + i + ".java"), FileManifest.hash(written));
+		}
+
+		int remembered = 0;
+		for (int i = 0; i < 1000; i++) {
+			if (filter.isEcho(Path.of("Example" + i + ".java"), written))
+				remembered++;
+		}
+		assertTrue(remembered <= 16);
+		assertTrue(filter.isEcho(Path.of("Example999.java"), written));
+	}
+}
@@ -0,0 +1,67 @@
+package com.minecrafttas.discombobulator.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import com.minecrafttas.discombobulator.utils.FileClassifier;
+import com.minecrafttas.discombobulator.utils.FileManifest;
+
+class TestFileClassifier {
+
+	private FileClassifier classifier = new FileClassifier(Arrays.asList("*.txt", "main/resources/assets/**"));
+
+	/**
+	 * Paths: Binary file endings, filename globs and path globs
+	 * Expected: Only those are passed through
+	 */
+	@Test
+	void testPassthrough() {
+		assertTrue(classifier.isPassthrough(Path.of("main/resources/icon.PNG")));
+		assertTrue(classifier.isPassthrough(Path.of("main/resources/sounds/click.ogg")));
+		assertTrue(classifier.isPassthrough(Path.of("main/resources/readme.txt")));
+		assertTrue(classifier.isPassthrough(Path.of("main/resources/assets/lang/en_us.json")));
+
+		assertFalse(classifier.isPassthrough(Path.of("main/java/com/minecrafttas/Example.java")));
+		assertFalse(classifier.isPassthrough(Path.of("main/resources/example.accesswidener")));
+		assertFalse(classifier.isPassthrough(Path.of("main/resources/assets")));
+		assertFalse(classifier.isPassthrough(Path.of("main/resources/png")));
+	}
+
+	/**
+	 * Content: Text, text with umlauts, invalid UTF-8 and a zero byte
+	 * Expected: Only the zero byte is binary, invalid UTF-8 fails when preprocessing instead
+	 */
+	@Test
+	void testBinary() {
+		assertFalse(FileClassifier.isBinary("//# 1.14.4\nint i;\n".getBytes(StandardCharsets.UTF_8)));
+		assertFalse(FileClassifier.isBinary("String s = \"\u00e4\u20ac\";".getBytes(StandardCharsets.UTF_8)));
+		assertFalse(FileClassifier.isBinary(new byte[0]));
+
+		assertFalse(FileClassifier.isBinary(new byte[] {'/', '/', '#', ' ', (byte) 0xC3, '1'}));
+
+		assertTrue(FileClassifier.isBinary(new byte[] {'/', '/', '#', 0, 1}));
+	}
+
+	/**
+	 * Hashing a file larger than the buffer
+	 * Expected: The same hash as hashing the bytes
+	 * @throws Exception
+	 */
+	@Test
+	void testHashFile() throws Exception {
+		Path file = Files.createTempDirectory("discombobulator").resolve("Large.png");
+		byte[] bytes = new byte[20000];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) i;
+		}
+		Files.write(file, bytes);
+
+		assertEquals(FileManifest.hash(bytes), FileManifest.hash(file));
+	}
+}
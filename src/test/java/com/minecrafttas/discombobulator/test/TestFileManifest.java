@@ -0,0 +1,91 @@
+package com.minecrafttas.discombobulator.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.minecrafttas.discombobulator.utils.FileManifest;
+
+class TestFileManifest {
+
+	/**
+	 * Saving and loading with the same fingerprint
+	 * Expected: The same entries
+	 * @throws Exception
+	 */
+	@Test
+	void testSaveLoad() throws Exception {
+		Path root = Files.createTempDirectory("discombobulator");
+		Path file = root.resolve("build/discombobulator/manifest.txt");
+		Path output = root.resolve("Output.java");
+		Files.writeString(output, "class Output {}");
+
+		FileManifest manifest = FileManifest.load(file, "abc");
+		assertFalse(manifest.isLoaded());
+
+		Map<String, FileManifest.Output> outputs = new LinkedHashMap<>();
+		outputs.put("1.14.4", FileManifest.Output.of(output, FileManifest.hash("class Output {}".getBytes(StandardCharsets.UTF_8))));
+		manifest.put("com/example/Output.java", new FileManifest.FileEntry("1234", outputs));
+		manifest.put("com/example/Removed.java", new FileManifest.FileEntry("5678", new LinkedHashMap<>()));
+		manifest.remove("com/example/Removed.java");
+		manifest.save();
+
+		FileManifest loaded = FileManifest.load(file, "abc");
+		assertTrue(loaded.isLoaded());
+		assertEquals(Set.of("com/example/Output.java"), loaded.getPaths());
+
+		FileManifest.FileEntry entry = loaded.get("com/example/Output.java");
+		assertEquals("1234", entry.getInputHash());
+		assertEquals(outputs.get("1.14.4").getHash(), entry.getOutput("1.14.4").getHash());
+		assertTrue(entry.getOutput("1.14.4").isUnchanged(output));
+		assertNull(entry.getOutput("1.12.2"));
+	}
+
+	/**
+	 * Loading with a different fingerprint
+	 * Expected: An empty manifest
+	 * @throws Exception
+	 */
+	@Test
+	void testFingerprintChanged() throws Exception {
+		Path file = Files.createTempDirectory("discombobulator").resolve("manifest.txt");
+
+		FileManifest manifest = FileManifest.load(file, "abc");
+		manifest.put("Example.java", new FileManifest.FileEntry("1234", new LinkedHashMap<>()));
+		manifest.save();
+
+		FileManifest loaded = FileManifest.load(file, "def");
+		assertFalse(loaded.isLoaded());
+		assertTrue(loaded.getPaths().isEmpty());
+	}
+
+	/**
+	 * Output changed after it was recorded
+	 * Expected: Not unchanged
+	 * @throws Exception
+	 */
+	@Test
+	void testOutputChanged() throws Exception {
+		Path output = Files.createTempDirectory("discombobulator").resolve("Output.java");
+		Files.writeString(output, "class Output {}");
+		Files.setLastModifiedTime(output, FileTime.fromMillis(1000000));
+
+		FileManifest.Output recorded = FileManifest.Output.of(output, "1234");
+		assertTrue(recorded.isUnchanged(output));
+
+		Files.writeString(output, "class Output { int changed; }");
+		Files.setLastModifiedTime(output, FileTime.fromMillis(1000000));
+		assertFalse(recorded.isUnchanged(output));
+
+		Files.delete(output);
+		assertFalse(recorded.isUnchanged(output));
+	}
+}
@@ -0,0 +1,227 @@
+package com.minecrafttas.discombobulator.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.minecrafttas.discombobulator.utils.Debouncer;
+import com.minecrafttas.discombobulator.utils.FileWatchService;
+import com.minecrafttas.discombobulator.utils.FileWatcher;
+
+class TestFileWatchService {
+
+	/**
+	 * A watcher that remembers the modified files
+	 */
+	private static class RecordingWatcher extends FileWatcher {
+
+		private final Set<Path> modified = Collections.synchronizedSet(new HashSet<>());
+		private final CountDownLatch latch;
+
+		public RecordingWatcher(Path rootDir, CountDownLatch latch) throws IOException {
+			super(rootDir);
+			this.latch = latch;
+		}
+
+		@Override
+		protected void onNewFile(Path path) {
+		}
+
+		@Override
+		protected void onModifyFile(Path path) {
+			modified.add(path.getFileName());
+			latch.countDown();
+		}
+
+		@Override
+		protected void onDeleteFile(Path path) {
+		}
+
+		@Override
+		public void deleteDirectory(Path path) throws IOException {
+			super.deleteDirectory(path);
+		}
+	}
+
+	/**
+	 * Creates a source folder with a few packages
+	 * @return The source folder
+	 * @throws IOException
+	 */
+	private Path createSourceFolder() throws IOException {
+		Path root = Files.createTempDirectory("discombobulator");
+		for (int i = 0; i < 20; i++) {
+			Files.createDirectories(root.resolve("com/minecrafttas/package" + i));
+		}
+		return root;
+	}
+
+	/**
+	 * Two source folders watched by one service, a file modified in each
+	 * Expected: Every folder is watched once, the events go to the watcher of their folder
+	 * @throws Exception
+	 */
+	@Test
+	void testMultipleRoots() throws Exception {
+		Path first = createSourceFolder();
+		Path second = createSourceFolder();
+		CountDownLatch latch = new CountDownLatch(2);
+
+		try (FileWatchService service = new FileWatchService()) {
+			RecordingWatcher firstWatcher = new RecordingWatcher(first, latch);
+			RecordingWatcher secondWatcher = new RecordingWatcher(second, latch);
+			service.register(firstWatcher, 4);
+			service.register(secondWatcher, 4);
+			assertEquals(46, service.getWatchCount());	// The root, com, minecrafttas and 20 packages, twice
+
+			Thread thread = new Thread(() -> {
+				try {
+					service.watch();
+				} catch (ClosedWatchServiceException | InterruptedException | IOException e) {
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+
+			Files.writeString(first.resolve("com/minecrafttas/package3/First.java"), "class First {}");
+			Files.writeString(second.resolve("com/minecrafttas/package17/Second.java"), "class Second {}");
+
+			assertTrue(latch.await(10, TimeUnit.SECONDS));
+			assertEquals(Set.of(Path.of("First.java")), firstWatcher.modified);
+			assertEquals(Set.of(Path.of("Second.java")), secondWatcher.modified);
+		}
+	}
+
+	/**
+	 * Creates a service with the quiet period and maximum delay on the timer, watching a source folder with a watcher that records the content of every modified file.
+	 * The events are dispatched by the test instead of a watching thread, so only the timer decides when a file is processed
+	 * @return The service
+	 */
+	private FileWatchService createService(Path root, Debouncer debouncer, BlockingQueue<String> processed) throws IOException {
+		FileWatchService service = new FileWatchService(debouncer);
+		service.register(new FileWatcher(root) {
+			// @formatter:off
+			@Override protected void onNewFile(Path path) { }
+			@Override protected void onModifyFile(Path path) { try { processed.add(Files.readString(path)); } catch (IOException e) { processed.add(e.getMessage()); } }
+			@Override protected void onDeleteFile(Path path) { }
+			// @formatter:on
+		}, 1);
+		return service;
+	}
+
+	/**
+	 * Saves the file and dispatches the modify event of the save
+	 */
+	private void save(FileWatchService service, Path file, String content) throws IOException {
+		Files.writeString(file, content);
+		service.dispatch(new ReplayKey(file.getParent(), List.of(new ModifyEvent(file.getFileName()))));
+	}
+
+	/**
+	 * One file saved 10 times in a row, 20 ms apart, with a quiet period of 300 ms
+	 * Expected: One job for the whole burst once the saves stopped for the quiet period, with the content of the last save
+	 * @throws Exception
+	 */
+	@Test
+	void testBurst() throws Exception {
+		Path root = createSourceFolder().toAbsolutePath();
+		Path file = root.resolve("com/minecrafttas/package0/Example.java");
+		Files.writeString(file, "class Example {}");
+		BlockingQueue<String> processed = new LinkedBlockingQueue<>();
+		ManualTimer timer = new ManualTimer();
+		Debouncer debouncer = new Debouncer(300, 10000, 1, timer);
+
+		try (FileWatchService service = createService(root, debouncer, processed)) {
+			assertEquals(23, service.getWatchCount());	// The root, com, minecrafttas and 20 packages
+			for (int i = 0; i < 10; i++) {
+				save(service, file, "class Example { int i = " + i + "; }");
+				assertEquals(0, timer.advance(20));
+			}
+			assertEquals(0, timer.advance(279));
+			assertEquals(1, debouncer.getPendingCount());
+
+			assertEquals(1, timer.advance(1));
+			assertEquals("class Example { int i = 9; }", processed.poll(10, TimeUnit.SECONDS));
+		}
+		assertTrue(processed.isEmpty());
+	}
+
+	/**
+	 * One file saved every 20 ms, with a quiet period of 300 ms and a maximum delay of 600 ms
+	 * Expected: The file is processed 600 ms after the first save, with the content of the last save before, as the saves never stop for the quiet period
+	 * @throws Exception
+	 */
+	@Test
+	void testMaxDelay() throws Exception {
+		Path root = createSourceFolder().toAbsolutePath();
+		Path file = root.resolve("com/minecrafttas/package0/Example.java");
+		Files.writeString(file, "class Example {}");
+		BlockingQueue<String> processed = new LinkedBlockingQueue<>();
+		ManualTimer timer = new ManualTimer();
+		Debouncer debouncer = new Debouncer(300, 600, 1, timer);
+
+		try (FileWatchService service = createService(root, debouncer, processed)) {
+			assertEquals(23, service.getWatchCount());	// The root, com, minecrafttas and 20 packages
+			for (int i = 0; i < 29; i++) {
+				save(service, file, "class Example { int i = " + i + "; }");
+				assertEquals(0, timer.advance(20));
+			}
+			save(service, file, "class Example { int i = 29; }");
+			assertEquals(1, timer.advance(20));
+			assertEquals("class Example { int i = 29; }", processed.poll(10, TimeUnit.SECONDS));
+		}
+	}
+
+	/**
+	 * A watched folder with 20 watched packages in it is deleted
+	 * Expected: The folder and all packages are not watched anymore, the other folders still are
+	 * @throws Exception
+	 */
+	@Test
+	void testDeleteDirectory() throws Exception {
+		Path root = createSourceFolder().toAbsolutePath();
+
+		try (FileWatchService service = new FileWatchService()) {
+			RecordingWatcher watcher = new RecordingWatcher(root, new CountDownLatch(0));
+			service.register(watcher, 4);
+			assertEquals(23, service.getWatchCount());
+
+			watcher.deleteDirectory(root.resolve("com/minecrafttas"));
+
+			assertEquals(2, service.getWatchCount());
+			assertNull(service.getWatcher(root.resolve("com/minecrafttas")));
+			assertNull(service.getWatcher(root.resolve("com/minecrafttas/package7")));
+			assertSame(watcher, service.getWatcher(root.resolve("com")));
+		}
+	}
+
+	/**
+	 * Limit files with a number, garbage and none at all
+	 * Expected: The number, -1 otherwise
+	 * @throws Exception
+	 */
+	@Test
+	void testReadWatchLimit() throws Exception {
+		Path file = Files.createTempDirectory("discombobulator").resolve("max_user_watches");
+		assertEquals(-1L, FileWatchService.readWatchLimit(file));
+
+		Files.writeString(file, "8192\n");
+		assertEquals(8192L, FileWatchService.readWatchLimit(file));
+
+		Files.writeString(file, "unlimited");
+		assertEquals(-1L, FileWatchService.readWatchLimit(file));
+	}
+}
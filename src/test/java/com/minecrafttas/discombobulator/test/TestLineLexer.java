@@ -0,0 +1,166 @@
+package com.minecrafttas.discombobulator.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+import com.minecrafttas.discombobulator.processor.LineLexer;
+
+class TestLineLexer {
+
+	private final Pattern regexBlocks = Pattern.compile("^\\s*\\/\\/ *(#+) *(.+)");
+	private final Pattern regexHashtag = Pattern.compile("^\\s*# *(#+) *(.+)");
+	private final Pattern regexPatterns = Pattern.compile("^.+\\/\\/ *@(.+);");
+
+	private LineLexer slashLexer = new LineLexer("//");
+	private LineLexer hashtagLexer = new LineLexer("#");
+
+	/**
+	 * Lines: Version statements
+	 * Expected: Level and version
+	 */
+	@Test
+	void testStatements() {
+		LineLexer.Token token = new LineLexer.Token();
+
+		slashLexer.lex("	//# 1.16.1", token);
+		assertTrue(token.isStatement());
+		assertEquals(1, token.getLevel());
+		assertEquals("1.16.1", token.getVersion("	//# 1.16.1"));
+
+		slashLexer.lex("		// ## end", token);
+		assertEquals(2, token.getLevel());
+		assertEquals("end", token.getVersion("		// ## end"));
+
+		hashtagLexer.lex("## 1.14.4", token);
+		assertEquals(1, token.getLevel());
+		assertEquals("1.14.4", token.getVersion("## 1.14.4"));
+
+		slashLexer.lex("// Code for 1.16.1", token);
+		assertFalse(token.isStatement());
+
+		hashtagLexer.lex("# Savestate Mod", token);
+		assertFalse(token.isStatement());
+	}
+
+	/**
+	 * Lines: Pattern annotations
+	 * Expected: The unsplit pattern names
+	 */
+	@Test
+	void testPatterns() {
+		LineLexer.Token token = new LineLexer.Token();
+
+		String line = "Minecraft.getInstance().level=10; //@GetMinecraft,GetLevel;";
+		slashLexer.lex(line, token);
+		assertFalse(token.isStatement());
+		assertEquals("GetMinecraft,GetLevel", token.getPatterns(line));
+
+		line = "		Minecraft.getInstance(); // @ GetMinecraft , GetLevel;";
+		slashLexer.lex(line, token);
+		assertEquals(" GetMinecraft , GetLevel", token.getPatterns(line));
+
+		line = "// @GetLevel;";
+		slashLexer.lex(line, token);
+		assertFalse(token.hasPatterns());
+
+		line = "mc.window; // @;";
+		slashLexer.lex(line, token);
+		assertFalse(token.hasPatterns());
+	}
+
+	/**
+	 * Lines: Randomly generated lines with the characters used in the regexes
+	 * Expected: The same result as the regexes
+	 */
+	@Test
+	void testSameAsRegex() {
+		Random random = new Random(1234);
+		char[] alphabet = {' ', ' ', '\t', '/', '/', '#', '#', '@', ';', ',', 'a', '1', '.', '$'};
+		LineLexer.Token token = new LineLexer.Token();
+
+		for (int i = 0; i < 200000; i++) {
+			StringBuilder builder = new StringBuilder();
+			int length = random.nextInt(16);
+			for (int j = 0; j < length; j++) {
+				builder.append(alphabet[random.nextInt(alphabet.length)]);
+			}
+			String line = builder.toString();
+
+			assertSameStatement(regexBlocks, slashLexer.lex(line, token), line);
+			assertSameStatement(regexHashtag, hashtagLexer.lex(line, token), line);
+
+			Matcher matcher = regexPatterns.matcher(line);
+			slashLexer.lex(line, token);
+			assertEquals(matcher.find() ? matcher.group(1) : null, token.getPatterns(line), line);
+		}
+	}
+
+	/**
+	 * Files: Code with and without statements, patterns and disabled lines
+	 * Expected: Only the files with markers are found
+	 */
+	@Test
+	void testContainsMarkers() {
+		assertFalse(slashLexer.containsMarkers(bytes("package a;\n// See https://example.com/#anchor\nint i = 0; // Mail to me@example.com;\n")));
+		assertFalse(slashLexer.containsMarkers(bytes("String s = \"\u00e4# @\";\n")));
+		assertFalse(hashtagLexer.containsMarkers(bytes("accessWidener v1 named\n# comment\n")));
+
+		assertTrue(slashLexer.containsMarkers(bytes("\t//# 1.14.4\n")));
+		assertTrue(slashLexer.containsMarkers(bytes("mc.window; // @GetWindow;")));
+		assertTrue(slashLexer.containsMarkers(bytes("//$$int i;\r\n")));
+		assertTrue(hashtagLexer.containsMarkers(bytes("## 1.14.4\n")));
+		assertTrue(hashtagLexer.containsMarkers(bytes("#$$accessible field a b c\n")));
+	}
+
+	/**
+	 * Files: Randomly generated files with the characters used in the regexes
+	 * Expected: Files without markers have no statements, patterns or disabled lines
+	 */
+	@Test
+	void testContainsMarkersRandom() {
+		Random random = new Random(1234);
+		char[] alphabet = {' ', ' ', '\t', '/', '/', '#', '#', '@', ';', ',', 'a', '1', '.', '$', '\n', '\r'};
+		LineLexer.Token token = new LineLexer.Token();
+
+		for (int i = 0; i < 100000; i++) {
+			StringBuilder builder = new StringBuilder();
+			int length = random.nextInt(24);
+			for (int j = 0; j < length; j++) {
+				builder.append(alphabet[random.nextInt(alphabet.length)]);
+			}
+			String file = builder.toString();
+
+			for (String line : file.split("\r\n|\r|\n")) {
+				if (!slashLexer.containsMarkers(bytes(file))) {
+					slashLexer.lex(line, token);
+					assertFalse(token.isStatement() || token.getPatterns(line) != null || line.startsWith("//$$"), file);
+				}
+				if (!hashtagLexer.containsMarkers(bytes(file))) {
+					hashtagLexer.lex(line, token);
+					assertFalse(token.isStatement() || token.getPatterns(line) != null || line.startsWith("#$$"), file);
+				}
+			}
+		}
+	}
+
+	private byte[] bytes(String file) {
+		return file.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private void assertSameStatement(Pattern regex, LineLexer.Token token, String line) {
+		Matcher matcher = regex.matcher(line);
+		if (matcher.find()) {
+			assertTrue(token.isStatement(), line);
+			assertEquals(matcher.group(1).length(), token.getLevel(), line);
+			assertEquals(matcher.group(2), token.getVersion(line), line);
+		} else {
+			assertFalse(token.isStatement(), line);
+		}
+	}
+}
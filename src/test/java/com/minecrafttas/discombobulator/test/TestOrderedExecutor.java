@@ -0,0 +1,79 @@
+package com.minecrafttas.discombobulator.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.minecrafttas.discombobulator.utils.OrderedExecutor;
+
+class TestOrderedExecutor {
+
+	/**
+	 * 100 jobs of the same path on 4 threads, the first one failing
+	 * Expected: The jobs run in order and never at the same time
+	 * @throws Exception
+	 */
+	@Test
+	void testSamePath() throws Exception {
+		List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+
+		try (OrderedExecutor executor = new OrderedExecutor("Test", 4)) {
+			executor.submit(Path.of("Example.java"), () -> {
+				throw new RuntimeException("Failing job");
+			});
+			CompletableFuture<Void> last = null;
+			for (int i = 0; i < 100; i++) {
+				int job = i;
+				last = executor.submit(Path.of("Example.java"), () -> {
+					maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+					order.add(job);
+					running.decrementAndGet();
+				});
+			}
+			last.get(10, TimeUnit.SECONDS);
+		}
+
+		assertEquals(100, order.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i, order.get(i));
+		}
+		assertEquals(1, maxRunning.get());
+	}
+
+	/**
+	 * Two jobs of different paths, each waiting for the other one to start
+	 * Expected: Both run at the same time
+	 * @throws Exception
+	 */
+	@Test
+	void testDifferentPaths() throws Exception {
+		CountDownLatch started = new CountDownLatch(2);
+		List<Boolean> results = Collections.synchronizedList(new ArrayList<>());
+
+		try (OrderedExecutor executor = new OrderedExecutor("Test", 2)) {
+			Runnable job = () -> {
+				started.countDown();
+				try {
+					results.add(started.await(10, TimeUnit.SECONDS));
+				} catch (InterruptedException e) {
+					results.add(false);
+				}
+			};
+			CompletableFuture<Void> first = executor.submit(Path.of("First.java"), job);
+			CompletableFuture<Void> second = executor.submit(Path.of("Second.java"), job);
+			CompletableFuture.allOf(first, second).get(20, TimeUnit.SECONDS);
+		}
+		assertEquals(List.of(true, true), results);
+	}
+}
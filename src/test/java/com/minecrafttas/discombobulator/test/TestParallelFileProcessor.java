@@ -0,0 +1,115 @@
+package com.minecrafttas.discombobulator.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+
+import com.minecrafttas.discombobulator.utils.BetterFileWalker;
+import com.minecrafttas.discombobulator.utils.Pair;
+import com.minecrafttas.discombobulator.utils.ParallelFileProcessor;
+
+class TestParallelFileProcessor {
+
+	/**
+	 * Creates a directory with files of different sizes
+	 * @return The directory
+	 * @throws IOException
+	 */
+	private Path createFiles() throws IOException {
+		Path root = Files.createTempDirectory("discombobulator");
+		Files.createDirectories(root.resolve("sub"));
+		Files.writeString(root.resolve("small.txt"), "a");
+		Files.writeString(root.resolve("large.txt"), "a".repeat(1000));
+		Files.writeString(root.resolve("sub/medium.txt"), "a".repeat(100));
+		for (int i = 0; i < 50; i++) {
+			Files.writeString(root.resolve("sub/file" + i + ".txt"), "a".repeat(10));
+		}
+		return root;
+	}
+
+	/**
+	 * @return The paths of all files in the directory, relative to it
+	 */
+	private List<Path> list(Path root) {
+		List<Path> files = new ArrayList<>();
+		BetterFileWalker.walk(root, files::add);
+		return files;
+	}
+
+	/**
+	 * Parallelism: 1
+	 * Expected: Largest files first
+	 * @throws Exception
+	 */
+	@Test
+	void testLargestFirst() throws Exception {
+		Path root = createFiles();
+		List<String> processed = new ArrayList<>();
+
+		List<Pair<Path, Exception>> errors = ParallelFileProcessor.process(root, list(root), 1, path -> processed.add(path.getFileName().toString()));
+
+		assertTrue(errors.isEmpty());
+		assertEquals(53, processed.size());
+		assertEquals(Arrays.asList("large.txt", "medium.txt"), processed.subList(0, 2));
+		assertEquals("small.txt", processed.get(52));
+	}
+
+	/**
+	 * Parallelism: 4
+	 * Expected: Every file processed once
+	 * @throws Exception
+	 */
+	@Test
+	void testParallel() throws Exception {
+		Path root = createFiles();
+		Set<Path> processed = ConcurrentHashMap.newKeySet();
+
+		List<Pair<Path, Exception>> errors = ParallelFileProcessor.process(root, list(root), 4, path -> {
+			assertTrue(processed.add(path));
+		});
+
+		assertTrue(errors.isEmpty());
+		assertEquals(53, processed.size());
+	}
+
+	/**
+	 * Parallelism: 4, with some files failing
+	 * Expected: Errors sorted by path, every other file processed
+	 * @throws Exception
+	 */
+	@Test
+	void testErrorsSorted() throws Exception {
+		Path root = createFiles();
+		Set<Path> processed = ConcurrentHashMap.newKeySet();
+
+		List<Pair<Path, Exception>> errors = ParallelFileProcessor.process(root, list(root), 4, path -> {
+			String name = path.getFileName().toString();
+			if (name.startsWith("file3") || name.equals("large.txt"))
+				throw new Exception("Failed " + name);
+			processed.add(path);
+		});
+
+		List<Path> errorPaths = new ArrayList<>();
+		for (Pair<Path, Exception> error : errors) {
+			errorPaths.add(error.left());
+		}
+		List<Path> sorted = new ArrayList<>(errorPaths);
+		Collections.sort(sorted);
+
+		assertEquals(12, errors.size());
+		assertEquals(sorted, errorPaths);
+		assertEquals(Path.of("large.txt"), errors.get(0).left());
+		assertEquals("Failed large.txt", errors.get(0).right().getMessage());
+		assertEquals(41, processed.size());
+	}
+}
@@ -0,0 +1,85 @@
+package com.minecrafttas.discombobulator.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.minecrafttas.discombobulator.processor.PatternMatcher;
+
+class TestPatternMatcher {
+
+	Map<String, Map<String, String>> patterns = Map.of(
+			"GetLevel", Map.of(
+				"1.14.4", "level",
+				"def", "world"
+			),
+			"GetMinecraft", Map.of(
+				"1.14.4", "Minecraft.getInstance()",
+				"def", "Minecraft.getMinecraft()"
+			)
+		);
+
+	private PatternMatcher matcher = new PatternMatcher(patterns);
+
+	/**
+	 * Line: Values of multiple patterns
+	 * Expected: All values replaced at once
+	 */
+	@Test
+	void testRewrite() {
+		String line = "Minecraft.getMinecraft().world = Minecraft.getMinecraft().world; // @GetMinecraft,GetLevel;";
+		PatternMatcher.Matches matches = matcher.match(line);
+
+		assertTrue(matches.contains("world"));
+		assertFalse(matches.contains("level"));
+		assertEquals("Minecraft.getMinecraft()", matches.findFirst("GetMinecraft"));
+		assertEquals("world", matches.findFirst("GetLevel"));
+
+		matches.replace("Minecraft.getMinecraft()", "Minecraft.getInstance()");
+		matches.replace("world", "level");
+		assertEquals("Minecraft.getInstance().level = Minecraft.getInstance().level; // @GetMinecraft,GetLevel;", matches.rewrite(line));
+	}
+
+	/**
+	 * Line: No values
+	 * Expected: The same line
+	 */
+	@Test
+	void testNoMatch() {
+		String line = "mc.window; // @GetWindow;";
+		PatternMatcher.Matches matches = matcher.match(line);
+
+		assertNull(matches.findFirst("GetLevel"));
+		assertNull(matches.findFirst("GetWindow"));
+		assertSame(line, matches.rewrite(line));
+	}
+
+	/**
+	 * Patterns: Values containing other values
+	 * Expected: Ambiguities are found, overlapping values are all found
+	 */
+	@Test
+	void testAmbiguities() {
+		Map<String, Map<String, String>> ambiguousPatterns = new LinkedHashMap<>();
+		ambiguousPatterns.put("GetLevel", Map.of("1.14.4", "level", "def", "world"));
+		ambiguousPatterns.put("GetRenderer", Map.of("1.14.4", "levelRenderer", "def", "renderGlobal"));
+		ambiguousPatterns.put("GetWorld", Map.of("def", "world"));
+
+		PatternMatcher ambiguousMatcher = new PatternMatcher(ambiguousPatterns);
+		List<String> ambiguities = ambiguousMatcher.getAmbiguities();
+
+		assertEquals(2, ambiguities.size());
+		assertTrue(ambiguities.contains("The pattern value \"world\" is used in multiple patterns (GetLevel, GetWorld)"));
+		assertTrue(ambiguities.contains("The pattern value \"level\" (GetLevel) is contained in \"levelRenderer\" (GetRenderer)"));
+		assertTrue(matcher.getAmbiguities().isEmpty());
+
+		String line = "mc.levelRenderer.level; // @GetRenderer;";
+		PatternMatcher.Matches matches = ambiguousMatcher.match(line);
+		assertEquals("levelRenderer", matches.findFirst("GetRenderer"));
+		assertEquals("level", matches.findFirst("GetLevel"));
+	}
+}
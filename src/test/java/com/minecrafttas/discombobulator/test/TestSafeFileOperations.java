@@ -0,0 +1,35 @@
+package com.minecrafttas.discombobulator.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import com.minecrafttas.discombobulator.utils.SafeFileOperations;
+
+class TestSafeFileOperations {
+
+	/**
+	 * Comparing files with the same size and with a difference after the first chunk
+	 * Expected: Not equal
+	 * @throws Exception
+	 */
+	@Test
+	void testContentEquals() throws Exception {
+		Path file = Files.createTempDirectory("discombobulator").resolve("Large.java");
+		byte[] bytes = "a".repeat(20000).getBytes(StandardCharsets.UTF_8);
+		Files.write(file, bytes);
+
+		assertTrue(SafeFileOperations.contentEquals(file, bytes));
+
+		byte[] different = bytes.clone();
+		different[15000] = 'b';
+		assertFalse(SafeFileOperations.contentEquals(file, different));
+		assertFalse(SafeFileOperations.contentEquals(file, Arrays.copyOf(bytes, 19999)));
+		assertFalse(SafeFileOperations.contentEquals(file.resolveSibling("Missing.java"), bytes));
+	}
+}
@@ -0,0 +1,69 @@
+package com.minecrafttas.discombobulator.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.minecrafttas.discombobulator.processor.VersionCatalog;
+import com.minecrafttas.discombobulator.utils.Pair;
+
+class TestVersionCatalog {
+
+	private VersionCatalog catalog = VersionCatalog.parse(Arrays.asList(
+			"1.14.4: Forge",
+			"1.12.2",
+			"1.8.9:Legacy"
+	));
+
+	/**
+	 * Versions with and without folders
+	 * Expected: Versions in order with their folder
+	 */
+	@Test
+	void testParse() {
+		assertEquals(Arrays.asList("1.14.4", "1.12.2", "1.8.9"), catalog.getVersions());
+
+		List<Pair<String, String>> pairs = catalog.getVersionPairs();
+		assertEquals("1.14.4", pairs.get(0).left());
+		assertEquals("Forge", pairs.get(0).right());
+		assertNull(pairs.get(1).right());
+		assertEquals("Legacy", pairs.get(2).right());
+	}
+
+	/**
+	 * Versions, keywords and unknown versions
+	 * Expected: The ordinal and back to the version
+	 */
+	@Test
+	void testOrdinals() {
+		assertEquals(0, catalog.getOrdinal("1.14.4"));
+		assertEquals(2, catalog.getOrdinal("1.8.9"));
+		assertEquals(VersionCatalog.DEF, catalog.getOrdinal("def"));
+		assertEquals(VersionCatalog.END, catalog.getOrdinal("end"));
+		assertEquals(VersionCatalog.NOT_FOUND, catalog.getOrdinal("1.16.1"));
+		assertEquals(VersionCatalog.NOT_FOUND, catalog.getOrdinal(null));
+
+		assertTrue(catalog.contains("1.12.2"));
+		assertFalse(catalog.contains("def"));
+
+		assertEquals("1.12.2", catalog.getName(1));
+		assertEquals("def", catalog.getName(VersionCatalog.DEF));
+		assertEquals("end", catalog.getName(VersionCatalog.END));
+	}
+
+	/**
+	 * The same version twice
+	 * Expected: Fail
+	 */
+	@Test
+	void testDuplicate() {
+		IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+			VersionCatalog.parse(Arrays.asList("1.14.4", "1.12.2: Folder", "1.14.4"));
+		});
+
+		assertEquals("The version 1.14.4 was defined twice", exception.getMessage());
+	}
+}
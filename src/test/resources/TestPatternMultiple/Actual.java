@@ -0,0 +1,24 @@
+package TestPatternMultiple;
+
+public class Actual {
+	Minecraft mc = new Minecraft();
+	
+	public Actual() {
+		Minecraft.getInstance().world=10; //@GetMinecraft,GetLevel;
+		Minecraft.getMinecraft().level=Minecraft.getMinecraft().level; //@GetMinecraft,GetLevel;
+	}
+	
+	
+	@SuppressWarnings("unused")
+	private static class Minecraft {
+		public int world=0;
+		public int level=0;
+		
+		public static Minecraft getMinecraft() {
+			return new Minecraft();
+		}
+		public static Minecraft getInstance() {
+			return new Minecraft();
+		}
+	}
+}